@@ -0,0 +1,133 @@
+package com.divinitor.dn.lib.game.mod.bench;
+
+import com.divinitor.dn.lib.game.mod.DnAssetAccessService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup and read throughput of {@link DnAssetAccessService} over synthetic paks.
+ *
+ * "Hot" reads cycle through a small set of assets that stays in the data cache. "Random" reads pick from every
+ * asset, so with enough entries they mostly miss the cache and inflate from the pak.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AssetAccessBenchmark {
+
+    private static final int HOT_SET_SIZE = 256;
+
+    @Param({"10000", "100000"})
+    public int entryCount;
+
+    @Param({"0.5"})
+    public double compressibility;
+
+    @Param({"LOG_NORMAL"})
+    public SyntheticPakGenerator.SizeDistribution distribution;
+
+    private Path dir;
+    private DnAssetAccessService service;
+    private String[] paths;
+    private String[] fileNames;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.dir = Files.createTempDirectory("dvmk-bench-");
+        List<String> generated = new SyntheticPakGenerator()
+            .entryCount(this.entryCount)
+            .compressibility(this.compressibility)
+            .distribution(this.distribution)
+            .generate(this.dir);
+        this.paths = generated.toArray(new String[0]);
+        this.fileNames = new String[this.paths.length];
+        for (int i = 0; i < this.paths.length; i++) {
+            this.fileNames[i] = this.paths[i].substring(this.paths[i].lastIndexOf('\\') + 1);
+        }
+
+        this.service = new DnAssetAccessService(this.dir);
+        this.service.indexPaks();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.service.clear();
+        BenchmarkFiles.deleteRecursively(this.dir);
+    }
+
+    private String randomPath() {
+        return this.paths[ThreadLocalRandom.current().nextInt(this.paths.length)];
+    }
+
+    private String hotPath() {
+        return this.paths[ThreadLocalRandom.current().nextInt(Math.min(HOT_SET_SIZE, this.paths.length))];
+    }
+
+    @Benchmark
+    public String resolveFullPath() throws IOException {
+        return this.service.resolve(this.randomPath());
+    }
+
+    @Benchmark
+    public String resolveFileName() throws IOException {
+        return this.service.resolve(this.fileNames[ThreadLocalRandom.current().nextInt(this.fileNames.length)]);
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return this.service.contains(this.randomPath());
+    }
+
+    @Benchmark
+    public byte[] getAssetHot() throws IOException {
+        return this.service.getAsset(this.hotPath());
+    }
+
+    @Benchmark
+    public byte[] getAssetRandom() throws IOException {
+        return this.service.getAsset(this.randomPath());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public byte[] getAssetHotThreaded() throws IOException {
+        return this.service.getAsset(this.hotPath());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public byte[] getAssetRandomThreaded() throws IOException {
+        return this.service.getAsset(this.randomPath());
+    }
+
+    /**
+     * Reads with an empty data cache. The cache is cleared before every call, so this runs in sample mode to keep
+     * the setup out of the measurement.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public byte[] getAssetCold(ColdCache cold) throws IOException {
+        return this.service.getAsset(cold.path);
+    }
+
+    @State(Scope.Thread)
+    public static class ColdCache {
+        String path;
+
+        @Setup(Level.Invocation)
+        public void clear(AssetAccessBenchmark benchmark) {
+            benchmark.service.invalidateCache();
+            this.path = benchmark.randomPath();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.divinitor.dn.lib.game.mod.bench;
+
+import com.divinitor.dn.lib.game.mod.compiler.SingleModCompiler;
+import com.divinitor.dn.lib.game.mod.definition.BuildInfo;
+import com.divinitor.dn.lib.game.mod.definition.CopyFromGameDirective;
+import com.divinitor.dn.lib.game.mod.definition.CopyFromPackDirective;
+import com.divinitor.dn.lib.game.mod.definition.ModPackage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Compiling a synthetic mod package with many build steps into a managed pak.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompileBenchmark {
+
+    /**
+     * Offset of the file count and index offset in a pak header.
+     */
+    private static final int FILE_COUNT_OFFSET = 256 + 4;
+    private static final int SIZEOF_INDEX_ENTRY = 316;
+
+    /**
+     * Number of files added from the mod package.
+     */
+    @Param({"100", "1000"})
+    public int packFiles;
+
+    /**
+     * Number of files copied from the game.
+     */
+    @Param({"100"})
+    public int gameFiles;
+
+    @Param({"16384"})
+    public int fileSize;
+
+    @Param({"0.5"})
+    public double compressibility;
+
+    private SyntheticGame game;
+    private SingleModCompiler compiler;
+    private Path target;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.game = new SyntheticGame(new SyntheticPakGenerator()
+            .entryCount(Math.max(this.gameFiles, 16))
+            .sizes(this.fileSize / 2, this.fileSize * 2)
+            .compressibility(this.compressibility));
+
+        Random random = new Random(0xC0DE);
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        CopyFromPackDirective[] add = new CopyFromPackDirective[this.packFiles];
+        for (int i = 0; i < this.packFiles; i++) {
+            String name = String.format("files/file%05d.dat", i);
+            files.put(name, content(random, this.fileSize, this.compressibility));
+            add[i] = CopyFromPackDirective.builder()
+                .source(name)
+                .dest(String.format("\\resource\\benchmod\\file%05d.dat", i))
+                .build();
+        }
+
+        List<String> gameAssets = this.game.getAssetPaths();
+        CopyFromGameDirective[] copy = new CopyFromGameDirective[this.gameFiles];
+        for (int i = 0; i < this.gameFiles; i++) {
+            String src = gameAssets.get(i % gameAssets.size());
+            CopyFromGameDirective directive = new CopyFromGameDirective();
+            directive.setSource(src);
+            directive.setDest(src.replace("\\bench\\", "\\benchcopy\\"));
+            copy[i] = directive;
+        }
+
+        BuildInfo build = new BuildInfo();
+        build.setAdd(add);
+        build.setCopy(copy);
+        ModPackage modPackage = this.game.createModPackage(build, files);
+
+        this.target = this.game.getRoot().resolve("00Resource_dvmk_bench.pak");
+        this.compiler = new SingleModCompiler(this.game.getKit());
+        this.compiler.setModPack(modPackage);
+        this.compiler.setTarget(this.target);
+        this.compiler.compute();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.game.close();
+    }
+
+    @Benchmark
+    public void compile(OutputSize size) throws IOException {
+        this.compiler.compile();
+        size.record(logicalSize(this.target));
+    }
+
+    /**
+     * The size of the pak up to the end of its file index, which excludes the sparse padding.
+     */
+    static long logicalSize(Path pak) throws IOException {
+        try (FileChannel channel = FileChannel.open(pak, READ)) {
+            ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, FILE_COUNT_OFFSET + header.position()) < 0) {
+                    throw new IOException("Truncated pak header");
+                }
+            }
+
+            header.flip();
+            int fileCount = header.getInt();
+            int indexOffset = header.getInt();
+            return indexOffset + (long) fileCount * SIZEOF_INDEX_ENTRY;
+        }
+    }
+
+    private static byte[] content(Random random, int size, double compressibility) {
+        byte[] ret = new byte[size];
+        random.nextBytes(ret);
+        int run = (int) (size * compressibility);
+        for (int i = 0; i < run; i++) {
+            ret[i] = 0;
+        }
+
+        return ret;
+    }
+}
@@ -0,0 +1,149 @@
+package com.divinitor.dn.lib.game.mod.bench;
+
+import co.phoenixlab.dn.subfile.dnt.DntColumn;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates synthetic DNT tables.
+ */
+public class DntGenerator {
+
+    private int rows = 10000;
+    private int columns = 32;
+    private double textRatio = 0.25;
+    private int maxTextLength = 48;
+    private long seed = 0xD47;
+
+    public DntGenerator rows(int rows) {
+        this.rows = rows;
+        return this;
+    }
+
+    public DntGenerator columns(int columns) {
+        this.columns = columns;
+        return this;
+    }
+
+    /**
+     * @param textRatio Fraction of columns that are TEXT, the rest are spread across the numeric types
+     */
+    public DntGenerator textRatio(double textRatio) {
+        this.textRatio = textRatio;
+        return this;
+    }
+
+    public DntGenerator maxTextLength(int maxTextLength) {
+        this.maxTextLength = maxTextLength;
+        return this;
+    }
+
+    public DntGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public String columnName(int column) {
+        return String.format("_Column%03d", column);
+    }
+
+    public DntColumn.DataType columnType(int column) {
+        int textColumns = (int) Math.round(this.columns * this.textRatio);
+        if (column < textColumns) {
+            return DntColumn.DataType.TEXT;
+        }
+
+        switch (column % 3) {
+            case 0:
+                return DntColumn.DataType.INTEGER;
+            case 1:
+                return DntColumn.DataType.FLOAT;
+            default:
+                return DntColumn.DataType.BOOLEAN;
+        }
+    }
+
+    /**
+     * @return The row IDs generated, which are 1 to the row count
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public byte[] generate() {
+        Random random = new Random(this.seed);
+        byte[][] names = new byte[this.columns][];
+        int size = 4 + 2 + 4 + 1 + 5;
+        for (int c = 0; c < this.columns; c++) {
+            names[c] = this.columnName(c).getBytes(StandardCharsets.UTF_8);
+            size += 2 + names[c].length + 1;
+        }
+
+        //  Generate row text up front so the buffer can be sized exactly
+        byte[][][] text = new byte[this.rows][this.columns][];
+        for (int r = 0; r < this.rows; r++) {
+            size += 4;
+            for (int c = 0; c < this.columns; c++) {
+                if (this.columnType(c) == DntColumn.DataType.TEXT) {
+                    text[r][c] = randomText(random, random.nextInt(this.maxTextLength + 1));
+                    size += 2 + text[r][c].length;
+                } else {
+                    size += 4;
+                }
+            }
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(0);
+        out.putShort((short) this.columns);
+        out.putInt(this.rows);
+        for (int c = 0; c < this.columns; c++) {
+            out.putShort((short) names[c].length);
+            out.put(names[c]);
+            out.put((byte) this.columnType(c).getId());
+        }
+
+        for (int r = 0; r < this.rows; r++) {
+            out.putInt(r + 1);
+            for (int c = 0; c < this.columns; c++) {
+                switch (this.columnType(c)) {
+                    case TEXT:
+                        out.putShort((short) text[r][c].length);
+                        out.put(text[r][c]);
+                        break;
+                    case BOOLEAN:
+                        out.putInt(random.nextInt(2));
+                        break;
+                    case FLOAT:
+                        out.putFloat(random.nextFloat() * 1000F);
+                        break;
+                    default:
+                        out.putInt(random.nextInt(100000));
+                        break;
+                }
+            }
+        }
+
+        out.put((byte) 5);
+        out.put("THEND".getBytes(StandardCharsets.US_ASCII));
+        return out.array();
+    }
+
+    static byte[] randomText(Random random, int length) {
+        byte[] ret = new byte[length];
+        for (int i = 0; i < length; i++) {
+            //  Mostly lowercase with some spaces, like identifiers and file names
+            int n = random.nextInt(32);
+            ret[i] = (byte) (n < 26 ? 'a' + n : n < 30 ? ' ' : '0' + n - 30);
+        }
+
+        return ret;
+    }
+}
@@ -0,0 +1,85 @@
+package com.divinitor.dn.lib.game.mod.bench;
+
+import com.divinitor.dn.lib.game.mod.DnAssetAccessService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to index synthetic paks, and the heap retained by the resulting index.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndexBenchmark {
+
+    @Param({"10000", "100000", "250000"})
+    public int entryCount;
+
+    @Param({"1", "4"})
+    public int pakCount;
+
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.dir = Files.createTempDirectory("dvmk-bench-");
+        new SyntheticPakGenerator()
+            .entryCount(this.entryCount)
+            .pakCount(this.pakCount)
+            .sizes(16, 1024)
+            .generate(this.dir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.deleteRecursively(this.dir);
+    }
+
+    @Benchmark
+    public DnAssetAccessService indexPaks() throws IOException {
+        DnAssetAccessService service = new DnAssetAccessService(this.dir);
+        service.indexPaks();
+        return service;
+    }
+
+    /**
+     * Reports the heap retained by an indexed service as the {@code retainedBytes} counter.
+     */
+    @Benchmark
+    public DnAssetAccessService indexFootprint(Footprint footprint) throws IOException {
+        long before = Footprint.usedAfterGc();
+        DnAssetAccessService service = new DnAssetAccessService(this.dir);
+        service.indexPaks();
+        footprint.retainedBytes += Footprint.usedAfterGc() - before;
+        return service;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long retainedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.retainedBytes = 0;
+        }
+
+        static long usedAfterGc() {
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            for (int i = 0; i < 3; i++) {
+                System.gc();
+            }
+
+            return memory.getHeapMemoryUsage().getUsed();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.divinitor.dn.lib.game.mod.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reports the average output size per operation as the {@code outputBytes} counter.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class OutputSize {
+
+    private long total;
+    private long count;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        this.total = 0;
+        this.count = 0;
+    }
+
+    public void record(long bytes) {
+        this.total += bytes;
+        ++this.count;
+    }
+
+    public long outputBytes() {
+        return this.count == 0 ? 0 : this.total / this.count;
+    }
+}
@@ -0,0 +1,88 @@
+package com.divinitor.dn.lib.game.mod.bench;
+
+import com.divinitor.dn.lib.game.mod.ModKit;
+import com.divinitor.dn.lib.game.mod.definition.BuildInfo;
+import com.divinitor.dn.lib.game.mod.definition.ModPackage;
+import com.github.zafarkhaja.semver.Version;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A throwaway game directory with synthetic paks, and optionally a mod package, for benchmarks that need a
+ * {@link ModKit}.
+ */
+public class SyntheticGame implements Closeable {
+
+    public static final String MOD_ID = "benchmod";
+    public static final Version MOD_VERSION = Version.forIntegers(1, 0, 0);
+
+    private final Path root;
+    private final List<String> assetPaths;
+    private final ModKit kit;
+
+    public SyntheticGame(SyntheticPakGenerator paks) throws Exception {
+        this.root = Files.createTempDirectory("dvmk-bench-game-");
+        Files.write(this.root.resolve("dragonnest.exe"), new byte[0]);
+        this.assetPaths = paks.generate(this.root);
+        this.kit = new ModKit(this.root);
+        this.kit.init();
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public List<String> getAssetPaths() {
+        return assetPaths;
+    }
+
+    public ModKit getKit() {
+        return kit;
+    }
+
+    /**
+     * Writes a mod package with the given build and files, and loads it.
+     *
+     * @param files Files to place in the package, by path relative to the package root
+     */
+    public ModPackage createModPackage(BuildInfo build, Map<String, byte[]> files) throws IOException {
+        build.setKitVersion(ModKit.KIT_VERSION);
+        ModPackage modPackage = new ModPackage();
+        modPackage.setId(MOD_ID);
+        modPackage.setName("Benchmark mod");
+        modPackage.setDescription("Synthetic mod package for benchmarks");
+        modPackage.setAuthor("benchmarks");
+        modPackage.setVersion(MOD_VERSION);
+        modPackage.setTimestamp(Instant.now());
+        modPackage.setBuild(build);
+
+        Path dir = this.root.resolve("modkit").resolve("modpacks").resolve(MOD_ID).resolve(MOD_VERSION.toString());
+        Files.createDirectories(dir);
+        try (BufferedWriter writer = Files.newBufferedWriter(dir.resolve("modinfo.json"), StandardCharsets.UTF_8)) {
+            this.kit.getGson().toJson(modPackage, writer);
+        }
+
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            Path target = dir.resolve(file.getKey());
+            Files.createDirectories(target.getParent());
+            Files.write(target, file.getValue());
+        }
+
+        this.kit.getCatalog().invalidate(MOD_ID);
+        return this.kit.getPackage(MOD_ID, MOD_VERSION);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.kit.getAssetAccessService().clear();
+        BenchmarkFiles.deleteRecursively(this.root);
+    }
+}
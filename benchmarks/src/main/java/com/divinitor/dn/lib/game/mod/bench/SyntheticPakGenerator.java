@@ -0,0 +1,233 @@
+package com.divinitor.dn.lib.game.mod.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Writes synthetic game paks, so that benchmarks don't need a game install.
+ *
+ * Each generated directory holds {@code Resource00.pak} onwards and a {@code version.cfg} asset, which is enough
+ * for {@link com.divinitor.dn.lib.game.mod.DnAssetAccessService}.
+ */
+public class SyntheticPakGenerator {
+
+    private static final String MAGIC = "EyedentityGames Packing File 0.1";
+    private static final int SIZEOF_HEADER = 1024;
+    private static final int SIZEOF_MAGIC = 256;
+    private static final int SIZEOF_PATH = 256;
+    private static final int SIZEOF_INDEX_ENTRY = 316;
+    private static final int PAK_VERSION = 11;
+    private static final int BLOCK_SIZE = 256;
+    private static final String VERSION_CFG = "\\version.cfg";
+
+    public enum SizeDistribution {
+        /**
+         * Sizes are spread evenly between the minimum and maximum.
+         */
+        UNIFORM,
+        /**
+         * Most assets are small with a long tail of large ones, like a real install.
+         */
+        LOG_NORMAL
+    }
+
+    private int entryCount = 10000;
+    private int pakCount = 1;
+    private int minSize = 64;
+    private int maxSize = 64 * 1024;
+    private SizeDistribution distribution = SizeDistribution.LOG_NORMAL;
+    private double compressibility = 0.5;
+    private long seed = 0x5EED;
+    private final Map<String, byte[]> extraAssets = new LinkedHashMap<>();
+
+    public SyntheticPakGenerator entryCount(int entryCount) {
+        this.entryCount = entryCount;
+        return this;
+    }
+
+    public SyntheticPakGenerator pakCount(int pakCount) {
+        this.pakCount = pakCount;
+        return this;
+    }
+
+    public SyntheticPakGenerator sizes(int minSize, int maxSize) {
+        if (minSize < 1 || maxSize < minSize) {
+            throw new IllegalArgumentException("Invalid size range " + minSize + " - " + maxSize);
+        }
+
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    public SyntheticPakGenerator distribution(SizeDistribution distribution) {
+        this.distribution = distribution;
+        return this;
+    }
+
+    /**
+     * @param compressibility Fraction of each asset that is repetitive, from 0 (random) to 1 (a single repeated
+     *                        byte)
+     */
+    public SyntheticPakGenerator compressibility(double compressibility) {
+        if (compressibility < 0 || compressibility > 1) {
+            throw new IllegalArgumentException("Compressibility must be between 0 and 1");
+        }
+
+        this.compressibility = compressibility;
+        return this;
+    }
+
+    public SyntheticPakGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Adds a fixed asset to the first pak, such as a generated table or uistring.xml.
+     *
+     * @param path Game path, such as {@code /resource/ext/itemtable.dnt}
+     */
+    public SyntheticPakGenerator asset(String path, byte[] data) {
+        String normalized = path.replace('/', '\\');
+        if (!normalized.startsWith("\\")) {
+            normalized = "\\" + normalized;
+        }
+
+        this.extraAssets.put(normalized, data);
+        return this;
+    }
+
+    /**
+     * Writes the paks into a directory.
+     *
+     * @return The game paths of every generated asset (without version.cfg or added assets), in a stable order
+     */
+    public List<String> generate(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Random random = new Random(this.seed);
+        List<String> paths = new ArrayList<>(this.entryCount);
+        for (int i = 0; i < this.entryCount; i++) {
+            paths.add(String.format("\\resource\\bench\\dir%02d\\asset%07d.dat", i % 64, i));
+        }
+
+        int perPak = (this.entryCount + this.pakCount - 1) / Math.max(this.pakCount, 1);
+        for (int pak = 0; pak < this.pakCount; pak++) {
+            int from = Math.min(pak * perPak, this.entryCount);
+            int to = Math.min(from + perPak, this.entryCount);
+            List<String> pakPaths = new ArrayList<>(paths.subList(from, to));
+            if (pak == 0) {
+                pakPaths.add(VERSION_CFG);
+                pakPaths.addAll(this.extraAssets.keySet());
+            }
+
+            this.writePak(dir.resolve(String.format("Resource%02d.pak", pak)), pakPaths, random);
+        }
+
+        return Collections.unmodifiableList(paths);
+    }
+
+    private void writePak(Path pak, List<String> paths, Random random) throws IOException {
+        ByteBuffer index = ByteBuffer.allocate(paths.size() * SIZEOF_INDEX_ENTRY).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(pak, WRITE, CREATE, TRUNCATE_EXISTING)) {
+            channel.position(SIZEOF_HEADER);
+            for (String path : paths) {
+                byte[] data;
+                if (path.equals(VERSION_CFG)) {
+                    data = "version 1\n".getBytes(StandardCharsets.UTF_8);
+                } else if (this.extraAssets.containsKey(path)) {
+                    data = this.extraAssets.get(path);
+                } else {
+                    data = this.content(random);
+                }
+
+                byte[] compressed = deflate(data);
+                int offset = (int) channel.position();
+                writeFully(channel, ByteBuffer.wrap(compressed));
+
+                byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+                int base = index.position();
+                index.put(pathBytes);
+                index.position(base + SIZEOF_PATH);
+                index.putInt(compressed.length);    //  raw size
+                index.putInt(data.length);          //  real size
+                index.putInt(compressed.length);    //  compressed size
+                index.putInt(offset);
+                index.putInt(0);
+                index.position(base + SIZEOF_INDEX_ENTRY);
+            }
+
+            int indexOffset = (int) channel.position();
+            index.flip();
+            writeFully(channel, index);
+
+            ByteBuffer header = ByteBuffer.allocate(SIZEOF_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC.getBytes(StandardCharsets.US_ASCII));
+            header.position(SIZEOF_MAGIC);
+            header.putInt(PAK_VERSION);
+            header.putInt(paths.size());
+            header.putInt(indexOffset);
+            header.rewind();
+            channel.position(0);
+            writeFully(channel, header);
+        }
+    }
+
+    private byte[] content(Random random) {
+        int size;
+        switch (this.distribution) {
+            case UNIFORM:
+                size = this.minSize + random.nextInt(this.maxSize - this.minSize + 1);
+                break;
+            case LOG_NORMAL:
+            default:
+                //  Median around a sixteenth of the range, clamped to it
+                double median = Math.max(this.minSize, (this.maxSize - this.minSize) / 16.0);
+                double sample = Math.exp(Math.log(median) + random.nextGaussian());
+                size = (int) Math.max(this.minSize, Math.min(this.maxSize, sample));
+                break;
+        }
+
+        byte[] ret = new byte[size];
+        random.nextBytes(ret);
+        //  In every block, replace a leading share of the random bytes with a run of one byte
+        int run = (int) (BLOCK_SIZE * this.compressibility);
+        for (int block = 0; block < size; block += BLOCK_SIZE) {
+            byte b = (byte) random.nextInt(4);
+            for (int i = block; i < block + run && i < size; i++) {
+                ret[i] = b;
+            }
+        }
+
+        return ret;
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(data.length / 2 + 64);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(baos, deflater)) {
+            out.write(data);
+        } finally {
+            deflater.end();
+        }
+
+        return baos.toByteArray();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.divinitor.dn.lib.game.mod.bench;
+
+import co.phoenixlab.dn.subfile.dnt.DntColumn;
+import com.divinitor.dn.lib.game.mod.compiler.TableEditor;
+import com.divinitor.dn.lib.game.mod.definition.TableEditDirective;
+import com.divinitor.dn.lib.game.mod.definition.TableRow;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Table edits over a synthetic DNT, in memory and streamed to a file.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TableEditBenchmark {
+
+    private static final String TABLE = "\\resource\\ext\\benchtable.dnt";
+
+    @Param({"1000", "50000"})
+    public int rows;
+
+    @Param({"16", "64"})
+    public int columns;
+
+    @Param({"0.25"})
+    public double textRatio;
+
+    /**
+     * Fraction of rows that are modified, and separately deleted. Half as many rows again are added.
+     */
+    @Param({"0.01"})
+    public double editRatio;
+
+    private SyntheticGame game;
+    private TableEditor editor;
+    private TableEditDirective directive;
+    private Path streamTarget;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        DntGenerator dnt = new DntGenerator()
+            .rows(this.rows)
+            .columns(this.columns)
+            .textRatio(this.textRatio);
+        this.game = new SyntheticGame(new SyntheticPakGenerator()
+            .entryCount(16)
+            .asset(TABLE, dnt.generate()));
+        this.editor = new TableEditor(this.game.getKit().getAssetAccessService());
+        this.directive = directive(dnt, this.editRatio);
+        this.streamTarget = this.game.getRoot().resolve("streamed.dnt");
+
+        //  Load the table into the asset cache so only the edit is measured
+        this.game.getKit().getAssetAccessService().getAsset(TABLE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.game.close();
+    }
+
+    @Benchmark
+    public byte[] compileTable(OutputSize size) throws IOException {
+        byte[] ret = this.editor.compileTable(TABLE, this.directive);
+        size.record(ret.length);
+        return ret;
+    }
+
+    @Benchmark
+    public long streamTable(OutputSize size) throws IOException {
+        try (FileChannel out = FileChannel.open(this.streamTarget, WRITE, CREATE, TRUNCATE_EXISTING)) {
+            long ret = this.editor.streamTable(TABLE, this.directive, out);
+            size.record(ret);
+            return ret;
+        }
+    }
+
+    static TableEditDirective directive(DntGenerator dnt, double editRatio) {
+        Random random = new Random(0xED17);
+        int edits = Math.max(1, (int) (dnt.getRows() * editRatio));
+        TableRow[] modify = new TableRow[edits];
+        int[] delete = new int[edits];
+        TableRow[] add = new TableRow[Math.max(1, edits / 2)];
+
+        //  Modify the first stretch of rows, delete the last, so the two never overlap
+        for (int i = 0; i < edits; i++) {
+            modify[i] = row(dnt, random, 1 + i * Math.max(1, dnt.getRows() / 2 / edits), 2);
+            delete[i] = dnt.getRows() - i;
+        }
+
+        for (int i = 0; i < add.length; i++) {
+            add[i] = row(dnt, random, dnt.getRows() + 1 + i, dnt.getColumns());
+        }
+
+        TableEditDirective directive = new TableEditDirective();
+        directive.setModify(modify);
+        directive.setDelete(delete);
+        directive.setAdd(add);
+        return directive;
+    }
+
+    private static TableRow row(DntGenerator dnt, Random random, int rowId, int columnCount) {
+        Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < columnCount; i++) {
+            int c = random.nextInt(dnt.getColumns());
+            DntColumn.DataType type = dnt.columnType(c);
+            Object value;
+            switch (type) {
+                case TEXT:
+                    value = new String(DntGenerator.randomText(random, 16), StandardCharsets.UTF_8);
+                    break;
+                case BOOLEAN:
+                    value = random.nextBoolean();
+                    break;
+                case FLOAT:
+                    value = random.nextFloat();
+                    break;
+                default:
+                    value = random.nextInt(1000);
+                    break;
+            }
+
+            values.put(dnt.columnName(c), value);
+        }
+
+        TableRow row = new TableRow();
+        row.setRowId(rowId);
+        row.setColumns(values);
+        return row;
+    }
+}
@@ -0,0 +1,127 @@
+package com.divinitor.dn.lib.game.mod.bench;
+
+import com.divinitor.dn.lib.game.mod.compiler.processors.Processors;
+import com.divinitor.dn.lib.game.mod.definition.BuildInfo;
+import com.divinitor.dn.lib.game.mod.definition.ModPackage;
+import com.divinitor.dn.lib.game.mod.definition.UiStringEditDirective;
+import com.divinitor.dn.lib.game.mod.uistring.UiStringCache;
+import com.divinitor.dn.lib.game.mod.uistring.UiStringPatcher;
+import com.divinitor.dn.lib.game.mod.uistring.UiStringTable;
+import com.divinitor.dn.lib.game.mod.util.Utils;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and patching a synthetic uistring.xml, and the whole uistring processor.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UiStringBenchmark {
+
+    private static final String DIRECTIVE = "uistring.json";
+
+    @Param({"10000", "100000"})
+    public int messages;
+
+    /**
+     * Fraction of messages that are changed. Half as many messages again are added.
+     */
+    @Param({"0.01"})
+    public double editRatio;
+
+    private byte[] xml;
+    private UiStringTable table;
+    private TLongObjectMap<String> changes;
+    private TLongObjectMap<String> additions;
+    private TLongList additionOrder;
+    private SyntheticGame game;
+    private ModPackage modPackage;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.xml = new UiStringXmlGenerator().messages(this.messages).generate();
+        this.table = UiStringTable.parse(this.xml);
+
+        Random random = new Random(0x0157);
+        int edits = Math.max(1, (int) (this.messages * this.editRatio));
+        this.changes = new TLongObjectHashMap<>();
+        this.additions = new TLongObjectHashMap<>();
+        this.additionOrder = new TLongArrayList();
+        UiStringEditDirective directive = new UiStringEditDirective();
+        Map<String, String> add = new LinkedHashMap<>();
+        List<UiStringEditDirective.UiStringEdit> editList = new ArrayList<>();
+        for (int i = 0; i < edits; i++) {
+            long mid = 1 + random.nextInt(this.messages);
+            String value = new String(DntGenerator.randomText(random, 40), StandardCharsets.UTF_8);
+            this.changes.put(mid, value);
+
+            UiStringEditDirective.UiStringEdit edit = new UiStringEditDirective.UiStringEdit();
+            edit.setMid(Long.toString(mid));
+            edit.setValue(value);
+            editList.add(edit);
+        }
+
+        for (int i = 0; i < Math.max(1, edits / 2); i++) {
+            long mid = this.messages + 1 + i;
+            String value = new String(DntGenerator.randomText(random, 40), StandardCharsets.UTF_8);
+            this.additions.put(mid, value);
+            this.additionOrder.add(mid);
+            add.put(Long.toString(mid), value);
+        }
+
+        directive.setAdd(add);
+        directive.setEdit(editList);
+        directive.setInclude(new ArrayList<>());
+
+        this.game = new SyntheticGame(new SyntheticPakGenerator()
+            .entryCount(16)
+            .asset(UiStringCache.UISTRING_PATH, this.xml));
+        this.modPackage = this.game.createModPackage(new BuildInfo(),
+            Collections.singletonMap(DIRECTIVE,
+                this.game.getKit().getGson().toJson(directive).getBytes(StandardCharsets.UTF_8)));
+
+        //  Parse the game's table once, as a real build would have
+        this.game.getKit().getUiStringCache().get();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.game.close();
+    }
+
+    @Benchmark
+    public UiStringTable parse() {
+        return UiStringTable.parse(this.xml);
+    }
+
+    @Benchmark
+    public byte[] patch(OutputSize size) {
+        byte[] ret = UiStringPatcher.patch(this.table, this.changes, this.additions, this.additionOrder);
+        size.record(ret.length);
+        return ret;
+    }
+
+    /**
+     * The uistring processor end to end: loading the directive, matching edits, and patching.
+     */
+    @Benchmark
+    public byte[] process(OutputSize size) throws Exception {
+        Utils.ThrowingSupplier<byte[]> supplier = Processors.getProcessor("uistring")
+            .process(this.modPackage, DIRECTIVE);
+        byte[] ret = supplier.get();
+        size.record(ret.length);
+        return ret;
+    }
+}
@@ -0,0 +1,54 @@
+package com.divinitor.dn.lib.game.mod.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates synthetic uistring.xml files, with MIDs from 1 to the message count.
+ */
+public class UiStringXmlGenerator {
+
+    private int messages = 100000;
+    private int maxLength = 80;
+    private long seed = 0x5712;
+
+    public UiStringXmlGenerator messages(int messages) {
+        this.messages = messages;
+        return this;
+    }
+
+    public UiStringXmlGenerator maxLength(int maxLength) {
+        this.maxLength = maxLength;
+        return this;
+    }
+
+    public UiStringXmlGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public int getMessages() {
+        return messages;
+    }
+
+    public byte[] generate() {
+        Random random = new Random(this.seed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(this.messages * (this.maxLength / 2 + 48));
+        write(out, "<?xml version=\"1.0\" encoding=\"utf-8\" standalone=\"yes\"?>\r\n<messages>\r\n");
+        for (int mid = 1; mid <= this.messages; mid++) {
+            write(out, "  <message mid=\"" + mid + "\"><![CDATA[");
+            byte[] text = DntGenerator.randomText(random, 1 + random.nextInt(this.maxLength));
+            out.write(text, 0, text.length);
+            write(out, "]]></message>\r\n");
+        }
+
+        write(out, "</messages>\r\n");
+        return out.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.write(bytes, 0, bytes.length);
+    }
+}
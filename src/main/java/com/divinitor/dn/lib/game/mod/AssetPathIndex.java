@@ -0,0 +1,285 @@
+package com.divinitor.dn.lib.game.mod;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable index of game asset paths supporting directory listings and prefix, suffix and glob queries.
+ *
+ * Paths are held in one array sorted in natural order and in a second array holding each path reversed, also
+ * sorted. Every path with a given prefix is then a contiguous run of the first array, and every path with a given
+ * suffix a run of the second, each found with two binary searches. Prefix and suffix results are views over the
+ * arrays rather than copies.
+ *
+ * Paths are absolute, lower case and separated by backslashes, as in the pak index. Query arguments are normalized
+ * the same way.
+ */
+public final class AssetPathIndex {
+
+    public static final AssetPathIndex EMPTY = new AssetPathIndex(Collections.emptyList());
+
+    private static final char SEPARATOR = '\\';
+
+    private final String[] paths;
+    private final String[] reversed;
+    private final Set<String> pathSet;
+
+    public AssetPathIndex(Collection<String> paths) {
+        this.paths = paths.toArray(new String[0]);
+        Arrays.sort(this.paths);
+        this.reversed = new String[this.paths.length];
+        for (int i = 0; i < this.paths.length; ++i) {
+            this.reversed[i] = reverse(this.paths[i]);
+        }
+
+        Arrays.sort(this.reversed);
+        this.pathSet = new PathSet();
+    }
+
+    public int size() {
+        return this.paths.length;
+    }
+
+    public boolean contains(String path) {
+        return Arrays.binarySearch(this.paths, normalize(path)) >= 0;
+    }
+
+    /**
+     * @return An unmodifiable view of every path, in sorted order
+     */
+    public Set<String> getPaths() {
+        return this.pathSet;
+    }
+
+    /**
+     * @return An unmodifiable view of the paths that start with the given prefix, in sorted order
+     */
+    public List<String> withPrefix(String prefix) {
+        prefix = normalize(prefix);
+        int from = lowerBound(this.paths, prefix);
+        int to = upperBound(this.paths, prefix);
+        return Collections.unmodifiableList(Arrays.asList(this.paths).subList(from, to));
+    }
+
+    /**
+     * @return An unmodifiable view of the paths that end with the given suffix
+     */
+    public List<String> withSuffix(String suffix) {
+        String key = reverse(normalize(suffix));
+        int from = lowerBound(this.reversed, key);
+        int to = upperBound(this.reversed, key);
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                if (index < 0 || index >= to - from) {
+                    throw new IndexOutOfBoundsException(Integer.toString(index));
+                }
+
+                return reverse(reversed[from + index]);
+            }
+
+            @Override
+            public int size() {
+                return to - from;
+            }
+        };
+    }
+
+    /**
+     * Lists the immediate children of a directory. Subdirectories are listed once, with a trailing backslash, and
+     * their contents are skipped over with a binary search rather than visited.
+     */
+    public List<String> list(String directory) {
+        directory = normalize(directory);
+        if (directory.isEmpty() || directory.charAt(directory.length() - 1) != SEPARATOR) {
+            directory += SEPARATOR;
+        }
+
+        List<String> ret = new ArrayList<>();
+        int end = upperBound(this.paths, directory);
+        int i = lowerBound(this.paths, directory);
+        while (i < end) {
+            String path = this.paths[i];
+            int sep = path.indexOf(SEPARATOR, directory.length());
+            if (sep < 0) {
+                ret.add(path);
+                ++i;
+            } else {
+                String child = path.substring(0, sep + 1);
+                ret.add(child);
+                i = upperBound(this.paths, child);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Finds the paths matching a glob. {@code *} and {@code ?} match any run of characters and any one character
+     * within a path segment, and {@code **} matches across segments, with {@code **\\} matching any number of
+     * directories including none. A glob that doesn't start with a backslash matches at any depth.
+     *
+     * Only the paths sharing the glob's literal prefix, or its literal suffix if that narrows the search further,
+     * are tested against it.
+     */
+    public List<String> glob(String glob) {
+        glob = normalize(glob);
+        if (!isGlob(glob)) {
+            return this.contains(glob) ? Collections.singletonList(glob) : Collections.emptyList();
+        }
+
+        boolean absolute = glob.charAt(0) == SEPARATOR;
+        Pattern pattern = Pattern.compile((absolute ? "" : "(?:.*\\\\)?") + toRegex(glob));
+        List<String> candidates = absolute ? this.withPrefix(glob.substring(0, firstWildcard(glob))) : this.paths();
+        String suffix = glob.substring(lastWildcard(glob) + 1);
+        List<String> bySuffix = this.withSuffix(suffix);
+        if (bySuffix.size() < candidates.size()) {
+            candidates = bySuffix;
+        }
+
+        List<String> ret = new ArrayList<>();
+        for (String path : candidates) {
+            if (pattern.matcher(path).matches()) {
+                ret.add(path);
+            }
+        }
+
+        if (candidates == bySuffix) {
+            Collections.sort(ret);
+        }
+
+        return ret;
+    }
+
+    private List<String> paths() {
+        return Collections.unmodifiableList(Arrays.asList(this.paths));
+    }
+
+    public static boolean isGlob(String path) {
+        return path != null && (path.indexOf('*') >= 0 || path.indexOf('?') >= 0);
+    }
+
+    /**
+     * @return The directory part of a glob before its first wildcard, with a trailing backslash, or an empty string
+     * if the first segment has a wildcard
+     */
+    public static String globBase(String glob) {
+        glob = normalize(glob);
+        int wildcard = firstWildcard(glob);
+        return glob.substring(0, glob.lastIndexOf(SEPARATOR, wildcard) + 1);
+    }
+
+    /**
+     * Converts forward slashes and bangs to backslashes and lower cases the path.
+     */
+    public static String normalize(String path) {
+        return path.replaceAll("[/!]", Matcher.quoteReplacement("\\")).toLowerCase();
+    }
+
+    private static String toRegex(String glob) {
+        StringBuilder builder = new StringBuilder();
+        int literal = 0;
+        for (int i = 0; i < glob.length(); ++i) {
+            char c = glob.charAt(i);
+            if (c != '*' && c != '?') {
+                continue;
+            }
+
+            if (literal < i) {
+                builder.append(Pattern.quote(glob.substring(literal, i)));
+            }
+
+            if (c == '?') {
+                builder.append("[^\\\\]");
+            } else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                if (i + 2 < glob.length() && glob.charAt(i + 2) == SEPARATOR) {
+                    //  Any number of whole directories, including none
+                    builder.append("(?:.*\\\\)?");
+                    i += 2;
+                } else {
+                    builder.append(".*");
+                    ++i;
+                }
+            } else {
+                builder.append("[^\\\\]*");
+            }
+
+            literal = i + 1;
+        }
+
+        if (literal < glob.length()) {
+            builder.append(Pattern.quote(glob.substring(literal)));
+        }
+
+        return builder.toString();
+    }
+
+    private static int firstWildcard(String glob) {
+        int star = glob.indexOf('*');
+        int question = glob.indexOf('?');
+        return star < 0 ? question : question < 0 ? star : Math.min(star, question);
+    }
+
+    private static int lastWildcard(String glob) {
+        return Math.max(glob.lastIndexOf('*'), glob.lastIndexOf('?'));
+    }
+
+    private static String reverse(String s) {
+        return new StringBuilder(s).reverse().toString();
+    }
+
+    /**
+     * @return The index of the first key not less than the prefix
+     */
+    private static int lowerBound(String[] keys, String prefix) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * @return The index of the first key after every key that starts with the prefix
+     */
+    private static int upperBound(String[] keys, String prefix) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            String key = keys[mid];
+            if (key.compareTo(prefix) < 0 || key.startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    private class PathSet extends AbstractSet<String> {
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof String && Arrays.binarySearch(paths, o) >= 0;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return paths().iterator();
+        }
+
+        @Override
+        public int size() {
+            return paths.length;
+        }
+    }
+}
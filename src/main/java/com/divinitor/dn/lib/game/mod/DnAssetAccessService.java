@@ -2,71 +2,202 @@ package com.divinitor.dn.lib.game.mod;
 
 import co.phoenixlab.dn.pak.PakIndexEntry;
 import co.phoenixlab.dn.pak.PakReader;
+import com.divinitor.dn.lib.game.mod.cache.AssetCache;
+import com.divinitor.dn.lib.game.mod.cache.AssetCachePolicy;
+import com.divinitor.dn.lib.game.mod.compiler.StepProfile;
+import com.divinitor.dn.lib.game.mod.jfr.AssetFetchEvent;
+import com.divinitor.dn.lib.game.mod.jfr.CacheEvictionEvent;
+import com.divinitor.dn.lib.game.mod.jfr.ModKitEvents;
+import com.divinitor.dn.lib.game.mod.jfr.PakIndexEvent;
+import com.divinitor.dn.lib.game.mod.metrics.Counter;
+import com.divinitor.dn.lib.game.mod.metrics.Gauge;
+import com.divinitor.dn.lib.game.mod.metrics.Histogram;
+import com.divinitor.dn.lib.game.mod.metrics.MetricsRegistry;
 import com.divinitor.dn.lib.game.mod.util.Lockable;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.Weigher;
+import com.google.common.io.ByteStreams;
 import gnu.trove.impl.Constants;
 import gnu.trove.map.TIntObjectMap;
 import gnu.trove.map.TObjectIntMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.regex.Matcher;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import static com.divinitor.dn.lib.game.mod.util.Lockable.lock;
 import static com.divinitor.dn.lib.game.mod.util.Utils.sneakyConsumer;
+import static java.nio.file.StandardOpenOption.READ;
 
-public class DnAssetAccessService {
+public class DnAssetAccessService implements Closeable {
 
         public static final int INITIAL_CAPACITY = 200000;
+        private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+        /**
+         * Largest gap between two assets that a batch fetch will read through rather than seek over.
+         */
+        private static final int COALESCE_GAP = 64 * 1024;
+        private static final int MAX_COALESCED_READ = 8 * 1024 * 1024;
         private final TObjectIntMap<String> index;
         private final Map<String, PakIndexEntry> entryIndex;
         private final TIntObjectMap<PakReader> loadedPaks;
+        private final TIntObjectMap<Path> pakPaths;
         private int pakIndexCounter;
-        private final Cache<String, byte[]> dataCache;
+        private final AssetCache dataCache;
         private final Map<String, String> relativeIndex;
+        private AssetPathIndex pathIndex;
         private final List<PakIndexEntry> invalidEntries;
         private final Path root;
         private final ReadWriteLock lock;
+        private final Counter requests;
+        private final Histogram loadLatency;
+        private final Counter coalescedLoads;
+        private final Counter batchReads;
+        private final Counter batchReadBytes;
+        private final ConcurrentMap<String, CompletableFuture<byte[]>> inFlight;
+        private final MetricsRegistry metrics;
+        /**
+         * This service's parts of the registry's summed gauges, removed on close.
+         */
+        private final Map<String, Gauge> gauges;
 
         public DnAssetAccessService(Path root) {
+            this(root, new MetricsRegistry());
+        }
+
+        public DnAssetAccessService(Path root, MetricsRegistry metrics) {
+            this(root, metrics, AssetCachePolicy.DEFAULT);
+        }
+
+        public DnAssetAccessService(Path root, MetricsRegistry metrics, AssetCachePolicy cachePolicy) {
             this.lock = new ReentrantReadWriteLock();
             this.root = root;
             pakIndexCounter = 0;
             loadedPaks = new TIntObjectHashMap<>(15, Constants.DEFAULT_LOAD_FACTOR, -1);
+            pakPaths = new TIntObjectHashMap<>(15, Constants.DEFAULT_LOAD_FACTOR, -1);
             index = new TObjectIntHashMap<>(INITIAL_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, -1);
             entryIndex = new HashMap<>(INITIAL_CAPACITY);
             relativeIndex = new HashMap<>(INITIAL_CAPACITY);
-            dataCache = CacheBuilder.newBuilder()
-                .maximumWeight(50L * 1024L * 1024L) //  Max 50 MB cached
-                .weigher((Weigher<String, byte[]>) (key, value) -> value.length)
-                .expireAfterAccess(1, TimeUnit.MINUTES)
-                .build();
+            pathIndex = AssetPathIndex.EMPTY;
+            dataCache = new AssetCache(cachePolicy);
+            if (ModKitEvents.AVAILABLE) {
+                dataCache.addListener((key, value, cause) ->
+                    CacheEvictionEvent.emit(key, value.length, cause.name()));
+            }
             invalidEntries = new ArrayList<>();
+
+            requests = metrics.counter("assets.requests");
+            loadLatency = metrics.histogram("assets.load.nanos");
+            coalescedLoads = metrics.counter("assets.load.coalesced");
+            batchReads = metrics.counter("assets.batch.reads");
+            batchReadBytes = metrics.counter("assets.batch.readBytes");
+            inFlight = new ConcurrentHashMap<>();
+            //  Summed with the gauges of any other service sharing the registry
+            this.metrics = metrics;
+            this.gauges = new LinkedHashMap<>();
+            Gauge hits = sumGauge("assets.cache.hits", dataCache::getHitCount);
+            Gauge misses = sumGauge("assets.cache.misses", dataCache::getMissCount);
+            metrics.gauge("assets.cache.hitRate", () -> {
+                long hitCount = hits.getValue().longValue();
+                long requestCount = hitCount + misses.getValue().longValue();
+                return requestCount == 0 ? 1D : (double) hitCount / requestCount;
+            });
+            sumGauge("assets.cache.evictions", dataCache::getEvictionCount);
+            sumGauge("assets.cache.rejections", dataCache::getRejectionCount);
+            sumGauge("assets.cache.entries", dataCache::getEntryCount);
+            sumGauge("assets.cache.bytes", dataCache::getSize);
+            sumGauge("assets.cache.maxBytes", () -> dataCache.getPolicy().getMaxBytes());
+            sumGauge("assets.offHeap.hits", dataCache::getOffHeapHitCount);
+            sumGauge("assets.offHeap.misses", dataCache::getOffHeapMissCount);
+            sumGauge("assets.offHeap.evictions", dataCache::getOffHeapEvictionCount);
+            sumGauge("assets.offHeap.failures", dataCache::getOffHeapFailureCount);
+            sumGauge("assets.offHeap.entries", dataCache::getOffHeapEntryCount);
+            sumGauge("assets.offHeap.bytes", dataCache::getOffHeapSize);
+            sumGauge("assets.offHeap.maxBytes", () -> dataCache.getPolicy().getOffHeapMaxBytes());
+            sumGauge("assets.index.size", this::getIndexSize);
+            sumGauge("assets.index.invalid", this::getInvalidEntryCount);
+            sumGauge("assets.paks", this::getPakCount);
+        }
+
+        private Gauge sumGauge(String name, Gauge gauge) {
+            gauges.put(name, gauge);
+            return metrics.summedGauge(name, gauge);
+        }
+
+        /**
+         * Drops the cached asset data, releases the cache's off-heap storage, and stops adding this service's values
+         * to the registry's gauges.
+         */
+        @Override
+        public void close() throws IOException {
+            try (Lockable lck = lock(lock.writeLock())) {
+                gauges.forEach(metrics::removeGauge);
+                gauges.clear();
+                dataCache.close();
+            }
         }
 
         public void clear() {
             try (Lockable lck = lock(lock.writeLock())) {
                 index.clear();
                 loadedPaks.clear();
+                pakPaths.clear();
                 dataCache.invalidateAll();
                 pakIndexCounter = 0;
                 invalidEntries.clear();
+                pathIndex = AssetPathIndex.EMPTY;
             }
         }
 
+        /**
+         * Drops all cached asset data, leaving the index intact.
+         */
+        public void invalidateCache() {
+            dataCache.invalidateAll();
+        }
+
+        /**
+         * Keeps an asset in the cache once it has been loaded, regardless of the cache's capacity and admission
+         * policy, until it is unpinned. Pins are counted, so each call must be matched by a call to
+         * {@link #unpin(String)}.
+         */
+        public void pin(String path) throws FileNotFoundException {
+            try (Lockable lck = lock(lock.readLock())) {
+                dataCache.pin(resolve(path.toLowerCase()));
+            }
+        }
+
+        public void unpin(String path) throws FileNotFoundException {
+            try (Lockable lck = lock(lock.readLock())) {
+                dataCache.unpin(resolve(path.toLowerCase()));
+            }
+        }
+
+        public AssetCache getCache() {
+            return dataCache;
+        }
+
         public void indexPaks() throws IOException {
             try (Lockable lck = lock(lock.writeLock())) {
                 Path pakDir = root;
@@ -84,6 +215,7 @@ public class DnAssetAccessService {
                 resources.sort((p1, p2) -> getPathFileNameStr(p1).compareToIgnoreCase(getPathFileNameStr(p2)));
                 //  Index each
                 resources.forEach(sneakyConsumer(this::indexPak));
+                pathIndex = new AssetPathIndex(index.keySet());
             }
         }
 
@@ -97,18 +229,27 @@ public class DnAssetAccessService {
                 if (!Files.isRegularFile(pak)) {
                     throw new IllegalArgumentException("Not a valid file");
                 }
+                PakIndexEvent event = ModKitEvents.AVAILABLE ? PakIndexEvent.start() : null;
                 PakReader reader = new PakReader(pak);
                 reader.open();
                 ++pakIndexCounter;
                 int index = pakIndexCounter;
                 loadedPaks.put(index, reader);
+                pakPaths.put(index, pak);
+                int entries = 0;
+                int invalid = 0;
                 for (PakIndexEntry pakIndexEntry : reader.getPakInfo().getFileIndex()) {
+                    ++entries;
                     if (pakIndexEntry.getRealSize() != 0) {
                         indexPath(pakIndexEntry, index);
                     } else {
                         invalidEntries.add(pakIndexEntry);
+                        ++invalid;
                     }
                 }
+                if (event != null) {
+                    event.finish(getPathFileNameStr(pak), entries, invalid);
+                }
             }
         }
 
@@ -141,29 +282,320 @@ public class DnAssetAccessService {
         }
 
         public byte[] getAsset(final String path) throws IOException {
+            AssetFetchEvent event = ModKitEvents.AVAILABLE ? AssetFetchEvent.start() : null;
             try (Lockable lck = lock(lock.readLock())) {
                 Objects.requireNonNull(path);
+                requests.increment();
                 String resolvedPath = resolve(path.toLowerCase());
                 //  Cache check
                 byte[] ret = dataCache.getIfPresent(resolvedPath);
+                StepProfile.recordCacheLookup(ret != null);
                 if (ret != null) {
+                    if (event != null) {
+                        event.finish(resolvedPath, null, 0, ret.length, true, false, 0);
+                    }
                     return ret;
                 }
+
+                //  Only one thread inflates a given asset at a time, any others wait for its result
+                CompletableFuture<byte[]> loading = new CompletableFuture<>();
+                CompletableFuture<byte[]> existing = inFlight.putIfAbsent(resolvedPath, loading);
+                if (existing != null) {
+                    coalescedLoads.increment();
+                    ret = awaitLoad(existing);
+                    if (event != null) {
+                        //  A miss, but the inflate time is the other thread's
+                        event.finish(resolvedPath, null, 0, ret.length, false, true, 0);
+                    }
+                    return ret;
+                }
+
+                try {
+                    //  Another thread may have finished loading it between our cache miss and claiming the load
+                    ret = dataCache.peek(resolvedPath);
+                    if (ret == null) {
+                        ret = loadAsset(path, resolvedPath, event);
+                        dataCache.put(resolvedPath, ret);
+                    } else if (event != null) {
+                        event.finish(resolvedPath, null, 0, ret.length, true, false, 0);
+                    }
+                    loading.complete(ret);
+                    return ret;
+                } catch (Throwable t) {
+                    loading.completeExceptionally(t);
+                    throw t;
+                } finally {
+                    inFlight.remove(resolvedPath, loading);
+                }
+            }
+        }
+
+        private byte[] loadAsset(String path, String resolvedPath, AssetFetchEvent event) throws IOException {
+            int parIndex = index.get(resolvedPath);
+            if (parIndex == -1) {
+                throw new FileNotFoundException(path);
+            }
+            PakIndexEntry pie = entryIndex.get(resolvedPath);
+            PakReader reader = loadedPaks.get(parIndex);
+            if (reader == null) {
+                throw new IllegalStateException("Index entry refers to invalid pak for path " + path
+                    + ": No pak at " + parIndex);
+            }
+            //  We have to use our index entry because the path resolver in PakReader will grab the first,
+            //  even if it isnt necessarily valid (e.g. zero decomp size)
+            long inflateStart = System.nanoTime();
+            byte[] ret = reader.getSubfileData(pie);
+            long inflateTime = System.nanoTime() - inflateStart;
+            loadLatency.record(inflateTime);
+            if (event != null) {
+                event.finish(resolvedPath, getPathFileNameStr(pakPaths.get(parIndex)), pie.getCompressedSize(),
+                    pie.getRealSize(), false, false, inflateTime);
+            }
+            return ret;
+        }
+
+        private static byte[] awaitLoad(CompletableFuture<byte[]> loading) throws IOException {
+            try {
+                return loading.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Reads several assets, passing each requested path and its data to the consumer as soon as the asset is
+         * available. Cached assets come first, then the rest in the order they are stored: grouped by pak and sorted
+         * by offset, with neighbouring assets fetched by a single large read before being inflated, so that each pak
+         * is read sequentially. Assets that another thread is already loading come last.
+         *
+         * Loads of the assets not yet delivered are held while the consumer runs, so it must not wait on another
+         * thread that may be loading one of them.
+         *
+         * @param paths    Paths as accepted by {@link #getAsset(String)}
+         * @param consumer Called on this thread with each path as it was given, its data, and whether the data came
+         *                 from the cache
+         */
+        public void getAssets(Collection<String> paths, AssetConsumer consumer) throws IOException {
+            try (Lockable lck = lock(lock.readLock())) {
+                //  Resolved path to the requested paths that resolve to it
+                Map<String, List<String>> requested = new LinkedHashMap<>();
+                for (String path : paths) {
+                    Objects.requireNonNull(path);
+                    String resolvedPath = resolve(path.toLowerCase());
+                    if (index.get(resolvedPath) == -1) {
+                        throw new FileNotFoundException(path);
+                    }
+                    requested.computeIfAbsent(resolvedPath, k -> new ArrayList<>(1)).add(path);
+                }
+
+                TIntObjectMap<List<String>> misses = new TIntObjectHashMap<>();
+                Map<String, CompletableFuture<byte[]>> claimed = new HashMap<>();
+                Map<String, CompletableFuture<byte[]>> waiting = new LinkedHashMap<>();
+                for (Map.Entry<String, List<String>> e : requested.entrySet()) {
+                    String resolvedPath = e.getKey();
+                    requests.increment();
+                    byte[] data = dataCache.getIfPresent(resolvedPath);
+                    if (data != null) {
+                        e.getValue().forEach(p -> consumer.accept(p, data, true));
+                        continue;
+                    }
+                    CompletableFuture<byte[]> loading = new CompletableFuture<>();
+                    CompletableFuture<byte[]> existing = inFlight.putIfAbsent(resolvedPath, loading);
+                    if (existing != null) {
+                        coalescedLoads.increment();
+                        waiting.put(resolvedPath, existing);
+                    } else {
+                        claimed.put(resolvedPath, loading);
+                        int parIndex = index.get(resolvedPath);
+                        List<String> pakMisses = misses.get(parIndex);
+                        if (pakMisses == null) {
+                            pakMisses = new ArrayList<>();
+                            misses.put(parIndex, pakMisses);
+                        }
+                        pakMisses.add(resolvedPath);
+                    }
+                }
+
+                try {
+                    int[] paks = misses.keys();
+                    Arrays.sort(paks);
+                    for (int parIndex : paks) {
+                        List<String> pakMisses = misses.get(parIndex);
+                        pakMisses.sort(Comparator.comparingLong(p -> entryIndex.get(p).getOffset()));
+                        readPakRuns(parIndex, pakMisses, (resolvedPath, data) -> {
+                            dataCache.put(resolvedPath, data);
+                            claimed.get(resolvedPath).complete(data);
+                            requested.get(resolvedPath).forEach(p -> consumer.accept(p, data, false));
+                        });
+                    }
+                } catch (Throwable t) {
+                    claimed.values().forEach(f -> f.completeExceptionally(t));
+                    throw t;
+                } finally {
+                    claimed.forEach(inFlight::remove);
+                }
+
+                for (Map.Entry<String, CompletableFuture<byte[]>> e : waiting.entrySet()) {
+                    byte[] data = awaitLoad(e.getValue());
+                    requested.get(e.getKey()).forEach(p -> consumer.accept(p, data, false));
+                }
+            }
+        }
+
+        /**
+         * Reads several assets as {@link #getAssets(Collection, AssetConsumer)} does.
+         *
+         * @return The data of each requested path, in the order given
+         */
+        public Map<String, byte[]> getAssets(Collection<String> paths) throws IOException {
+            Map<String, byte[]> ret = new LinkedHashMap<>();
+            paths.forEach(p -> ret.put(p, null));
+            getAssets(paths, (path, data, cached) -> ret.put(path, data));
+            return ret;
+        }
+
+        /**
+         * Gets a key that orders assets by where they are stored, by pak and then by offset.
+         */
+        public long getLocation(String path) throws FileNotFoundException {
+            try (Lockable lck = lock(lock.readLock())) {
+                String resolvedPath = resolve(path.toLowerCase());
+                int parIndex = index.get(resolvedPath);
+                if (parIndex == -1) {
+                    throw new FileNotFoundException(path);
+                }
+                return ((long) parIndex << 32) | (entryIndex.get(resolvedPath).getOffset() & 0xFFFFFFFFL);
+            }
+        }
+
+        /**
+         * Reads and inflates assets from one pak, in the given order, which must be by offset. Runs of assets with
+         * small gaps between them are read at once.
+         */
+        private void readPakRuns(int parIndex, List<String> sorted, BiConsumer<String, byte[]> consumer)
+            throws IOException {
+            Path pak = pakPaths.get(parIndex);
+            Inflater inflater = new Inflater();
+            try (FileChannel channel = FileChannel.open(pak, READ)) {
+                int i = 0;
+                while (i < sorted.size()) {
+                    PakIndexEntry first = entryIndex.get(sorted.get(i));
+                    long start = first.getOffset() & 0xFFFFFFFFL;
+                    long end = start + first.getRawSize();
+                    int j = i + 1;
+                    while (j < sorted.size()) {
+                        PakIndexEntry next = entryIndex.get(sorted.get(j));
+                        long nextStart = next.getOffset() & 0xFFFFFFFFL;
+                        long nextEnd = nextStart + next.getRawSize();
+                        if (nextStart - end > COALESCE_GAP || nextEnd - start > MAX_COALESCED_READ) {
+                            break;
+                        }
+                        end = Math.max(end, nextEnd);
+                        ++j;
+                    }
+
+                    ByteBuffer run = ByteBuffer.allocate((int) (end - start));
+                    while (run.hasRemaining()) {
+                        if (channel.read(run, start + run.position()) < 0) {
+                            throw new IOException("Unexpected end of " + pak + " reading " + sorted.get(i));
+                        }
+                    }
+                    batchReads.increment();
+                    batchReadBytes.add(end - start);
+
+                    for (int k = i; k < j; k++) {
+                        String resolvedPath = sorted.get(k);
+                        PakIndexEntry entry = entryIndex.get(resolvedPath);
+                        long inflateStart = System.nanoTime();
+                        byte[] data = inflate(inflater, run.array(), (int) ((entry.getOffset() & 0xFFFFFFFFL) - start),
+                            entry.getRawSize(), entry.getRealSize(), resolvedPath);
+                        loadLatency.record(System.nanoTime() - inflateStart);
+                        consumer.accept(resolvedPath, data);
+                    }
+
+                    i = j;
+                }
+            } finally {
+                inflater.end();
+            }
+        }
+
+        private static byte[] inflate(Inflater inflater, byte[] buf, int off, int len, int realSize, String path)
+            throws IOException {
+            inflater.reset();
+            inflater.setInput(buf, off, len);
+            byte[] ret = new byte[realSize];
+            int n = 0;
+            try {
+                while (n < ret.length && !inflater.finished()) {
+                    int read = inflater.inflate(ret, n, ret.length - n);
+                    if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Truncated data for " + path);
+                    }
+                    n += read;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt data for " + path, e);
+            }
+            if (n != ret.length) {
+                throw new IOException("Expected " + ret.length + " bytes for " + path + " but got " + n);
+            }
+            return ret;
+        }
+
+        /**
+         * Opens a stream over the decompressed contents of an asset. Cached assets are served from memory, otherwise
+         * the asset is inflated from its pak as the stream is read, without holding the whole asset in memory.
+         */
+        public InputStream openAsset(final String path) throws IOException {
+            try (Lockable lck = lock(lock.readLock())) {
+                Objects.requireNonNull(path);
+                String resolvedPath = resolve(path.toLowerCase());
+                byte[] cached = dataCache.getIfPresent(resolvedPath);
+                if (cached != null) {
+                    return new ByteArrayInputStream(cached);
+                }
+
                 int parIndex = index.get(resolvedPath);
                 if (parIndex == -1) {
                     throw new FileNotFoundException(path);
                 }
+
                 PakIndexEntry pie = entryIndex.get(resolvedPath);
-                PakReader reader = loadedPaks.get(parIndex);
-                if (reader == null) {
+                Path pak = pakPaths.get(parIndex);
+                if (pak == null) {
                     throw new IllegalStateException("Index entry refers to invalid pak for path " + path
                         + ": No pak at " + parIndex);
                 }
-                //  We have to use our index entry because the path resolver in PakReader will grab the first,
-                //  even if it isnt necessarily valid (e.g. zero decomp size)
-                ret = reader.getSubfileData(pie);
-                dataCache.put(resolvedPath, ret);
-                return ret;
+
+                FileChannel channel = FileChannel.open(pak, READ);
+                try {
+                    channel.position(pie.getOffset());
+                    InputStream raw = ByteStreams.limit(Channels.newInputStream(channel), pie.getRawSize());
+                    return new InflaterInputStream(raw, new Inflater(), STREAM_BUFFER_SIZE) {
+                        @Override
+                        public void close() throws IOException {
+                            try {
+                                super.close();
+                            } finally {
+                                inf.end();
+                            }
+                        }
+                    };
+                } catch (IOException | RuntimeException e) {
+                    channel.close();
+                    throw e;
+                }
             }
         }
 
@@ -178,7 +610,7 @@ public class DnAssetAccessService {
         public String resolve(String path) throws FileNotFoundException {
             try (Lockable lck = lock(lock.readLock())) {
                 //  Replace slash with backslash
-                path = path.replaceAll("[/!]", Matcher.quoteReplacement("\\")).toLowerCase();
+                path = AssetPathIndex.normalize(path);
                 if (path.startsWith("\\")) {
                     //  Path is already absolute
                     return path;
@@ -186,8 +618,13 @@ public class DnAssetAccessService {
                 //  Look up the filename in the relative index
                 String lookup = relativeIndex.get(path);
                 if (lookup == null) {
-                    //  We could do an expensive search through the entire index, oooooorrrr
-                    throw new FileNotFoundException(path);
+                    //  Otherwise it must be the tail of exactly one indexed path
+                    List<String> matches = pathIndex.withSuffix("\\" + path);
+                    if (matches.size() != 1) {
+                        throw new FileNotFoundException(matches.isEmpty() ? path :
+                            "Ambiguous path " + path + " matches " + matches.size() + " assets");
+                    }
+                    lookup = matches.get(0);
                 }
                 return lookup;
             }
@@ -197,12 +634,34 @@ public class DnAssetAccessService {
             return getAssetPaths().stream();
         }
 
+        /**
+         * @return An unmodifiable, sorted view of every indexed path, which doesn't change if the paks are reindexed
+         */
         public Set<String> getAssetPaths() {
-            HashSet<String> strings;
+            return getPathIndex().getPaths();
+        }
+
+        /**
+         * @return A snapshot of the path index, for listing directories and searching paths
+         */
+        public AssetPathIndex getPathIndex() {
             try (Lockable lck = lock(lock.readLock())) {
-                strings = new HashSet<>(index.keySet());
+                return pathIndex;
             }
-            return strings;
+        }
+
+        /**
+         * Lists the files and subdirectories directly under a directory. Subdirectories end with a backslash.
+         */
+        public List<String> listDirectory(String directory) {
+            return getPathIndex().list(directory);
+        }
+
+        /**
+         * @see AssetPathIndex#glob(String)
+         */
+        public List<String> findAssets(String glob) {
+            return getPathIndex().glob(glob);
         }
 
         public List<PakIndexEntry> getInvalidEntries() {
@@ -216,4 +675,27 @@ public class DnAssetAccessService {
                 return Collections.unmodifiableMap(entryIndex);
             }
         }
+
+        public int getIndexSize() {
+            try (Lockable lck = lock(lock.readLock())) {
+                return index.size();
+            }
+        }
+
+        public int getInvalidEntryCount() {
+            try (Lockable lck = lock(lock.readLock())) {
+                return invalidEntries.size();
+            }
+        }
+
+        public int getPakCount() {
+            try (Lockable lck = lock(lock.readLock())) {
+                return loadedPaks.size();
+            }
+        }
+
+        @FunctionalInterface
+        public interface AssetConsumer {
+            void accept(String path, byte[] data, boolean cached);
+        }
     }
@@ -1,33 +1,43 @@
 package com.divinitor.dn.lib.game.mod;
 
+import com.divinitor.dn.lib.game.mod.archive.ModArchive;
+import com.divinitor.dn.lib.game.mod.archive.ModArchiveWriter;
+import com.divinitor.dn.lib.game.mod.cache.AssetCachePolicy;
 import com.divinitor.dn.lib.game.mod.compiler.ModKitCompiler;
 import com.divinitor.dn.lib.game.mod.compiler.SingleModCompiler;
 import com.divinitor.dn.lib.game.mod.constraints.ConstraintViolationException;
 import com.divinitor.dn.lib.game.mod.constraints.ModPackageConstraints;
 import com.divinitor.dn.lib.game.mod.definition.BuildInfo;
 import com.divinitor.dn.lib.game.mod.definition.ModPackage;
+import com.divinitor.dn.lib.game.mod.metrics.MetricsRegistry;
+import com.divinitor.dn.lib.game.mod.uistring.UiStringCache;
+import com.divinitor.dn.lib.game.mod.uistring.UiStringDirectiveLoader;
 import com.divinitor.dn.lib.game.mod.util.InstantGsonAdapter;
 import com.divinitor.dn.lib.game.mod.util.VersionGsonAdapter;
+import com.divinitor.dn.lib.game.mod.util.ZipHandleCache;
 import com.github.zafarkhaja.semver.Version;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import lombok.Getter;
+import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.time.Instant;
-import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
-public class ModKit {
+public class ModKit implements Closeable {
 
     public static final Logger LOGGER = LoggerFactory.getLogger(ModKit.class);
     public static final Version KIT_VERSION = Version.forIntegers(0, 1, 12);
@@ -44,20 +54,89 @@ public class ModKit {
     @Getter
     private DnAssetAccessService assetAccessService;
 
+    @Getter
+    private UiStringCache uiStringCache;
+
+    @Getter
+    private UiStringDirectiveLoader uiStringDirectiveLoader;
+
+    /**
+     * Catalog of installed mod packages.
+     */
+    @Getter
+    private final ModPackageCatalog catalog;
+
+    /**
+     * Open zip files of zipped mod packages.
+     */
+    @Getter
+    private final ZipHandleCache zipHandleCache;
+
+    /**
+     * Metrics reported by the asset service and compilers.
+     */
+    @Getter
+    private final MetricsRegistry metrics;
+
+    /**
+     * Cache settings for the asset service, applied when the kit is initialized. Defaults to the settings in
+     * system properties, see {@link AssetCachePolicy#fromSystemProperties()}.
+     */
+    @Getter
+    @Setter
+    private AssetCachePolicy assetCachePolicy;
+
+    private final Gson gson;
+
+    private final Map<Path, OpenArchive> modArchives;
+
     public ModKit(Path root) {
+        this(root, new MetricsRegistry());
+    }
+
+    public ModKit(Path root, MetricsRegistry metrics) {
         this.root = root;
+        this.metrics = metrics;
+        this.assetCachePolicy = AssetCachePolicy.fromSystemProperties();
+        this.zipHandleCache = new ZipHandleCache();
+        this.modArchives = new HashMap<>();
+        this.gson = new GsonBuilder()
+            .setPrettyPrinting()
+            .registerTypeAdapter(Version.class, new VersionGsonAdapter())
+            .registerTypeAdapter(Instant.class, new InstantGsonAdapter())
+            .serializeNulls()
+            .create();
+        this.catalog = new ModPackageCatalog(this);
     }
 
     public void init() throws NotGameDirectoryException, IOException {
         this.checkIsGameDir();
 
-        this.assetAccessService = new DnAssetAccessService(this.root);
+        if (this.assetAccessService != null) {
+            //  Reinitializing, release the old service's off-heap cache
+            this.assetAccessService.close();
+        }
+
+        this.assetAccessService = new DnAssetAccessService(this.root, this.metrics, this.assetCachePolicy);
         this.assetAccessService.indexPaks();
+        this.uiStringCache = new UiStringCache(this.assetAccessService,
+            this.root.resolve("modkit").resolve("index").resolve("uistring.idx"));
+        this.uiStringDirectiveLoader = new UiStringDirectiveLoader(ForkJoinPool.commonPool());
 
         this.kitCompiler = new ModKitCompiler(this);
         this.singleCompiler = new SingleModCompiler(this);
     }
 
+    /**
+     * Publishes this kit's metrics over JMX, named after the game directory.
+     */
+    public ObjectName registerMBean() throws JMException {
+        Hashtable<String, String> properties = new Hashtable<>();
+        properties.put("type", "Metrics");
+        properties.put("root", ObjectName.quote(this.root.toAbsolutePath().toString()));
+        return this.metrics.registerMBean(new ObjectName("com.divinitor.modkit", properties));
+    }
+
     private void checkIsGameDir() throws NotGameDirectoryException {
         Path gameExe = this.root.resolve("dragonnest.exe");
         if (!Files.isRegularFile(gameExe)) {
@@ -73,108 +152,11 @@ public class ModKit {
     }
 
     public ModPackage getPackage(String id, Version version) throws IOException {
-        Gson gson = this.getGson();
-        Path moduleRepo = this.root.resolve("modkit").resolve("modpacks");
-        Path modDir = moduleRepo.resolve(id);
-        if (Files.isDirectory(modDir)) {
-            Path info = modDir.resolve(version.toString()).resolve("modinfo.json");
-            if (!Files.isRegularFile(info)) {
-                throw new FileNotFoundException("Missing modinfo.json for " + id + " v" + version.toString());
-            }
-
-            try (BufferedReader reader = Files.newBufferedReader(info, StandardCharsets.UTF_8)) {
-                ModPackage ret = gson.fromJson(reader, ModPackage.class);
-                if (!version.equals(ret.getVersion())) {
-                    throw new IllegalArgumentException("modinfo.json reports a different version than its module");
-                }
-
-                if (!id.equalsIgnoreCase(ret.getId())) {
-                    throw new IllegalArgumentException("modinfo.json reports a different ID than its module");
-                }
-
-                ret.setKit(this);
-                return ret;
-            }
-        } else {
-            throw new FileNotFoundException(id);
-        }
+        return this.catalog.getPackage(id, version);
     }
 
     public ModPackage getLatest(String id) throws IOException {
-        Gson gson = this.getGson();
-        Path moduleRepo = this.root.resolve("modkit").resolve("modpacks");
-        //  Check for a ZIP
-        Path modZip = moduleRepo.resolve(id + ".zip");
-        Path modDir = moduleRepo.resolve(id);
-        if (Files.isRegularFile(modZip)) {
-            ZipFile zipFile = new ZipFile(modZip.toFile());
-            ZipEntry entry = zipFile.getEntry("modinfo.json");
-            try (InputStream inputStream = zipFile.getInputStream(entry)) {
-                ModPackage ret = gson.fromJson(new InputStreamReader(inputStream), ModPackage.class);
-                if (!id.equalsIgnoreCase(ret.getId())) {
-                    throw new IllegalArgumentException("modinfo.json reports a different ID than its module");
-                }
-
-                ret.setKit(this);
-                return ret;
-            }
-        } else if (Files.isDirectory(modDir)) {
-            Version latest = null;
-
-            //  Look for a "latest" folder
-            Path latestFolder = modDir.resolve("latest");
-            boolean checkVer = true;
-            String dirName = null;
-            if (Files.isDirectory(latestFolder)) {
-                checkVer = false;
-                dirName = "latest";
-            }
-
-            if (dirName == null) {
-                //  Find latest version
-                try (Stream<Path> stream = Files.walk(modDir, 1)) {
-                    latest = stream
-                        .filter(Files::isDirectory)
-                        .filter((d) -> !modDir.equals(d))
-                        .map(Path::getFileName)
-                        .map(Path::toString)
-                        .map(Version::valueOf)
-                        .min(Comparator.reverseOrder())
-                        .orElseThrow(() -> new FileNotFoundException("No versions found for " + id));
-
-                    dirName = latest.toString();
-                }
-            }
-
-            Path info = modDir.resolve(dirName).resolve("modinfo.json");
-            if (!Files.isRegularFile(info)) {
-                if (latest != null) {
-                    throw new FileNotFoundException("Missing modinfo.json for " + id + " v" + latest.toString());
-                } else {
-                    throw new FileNotFoundException("Missing modinfo.json for " + id + " (latest)");
-                }
-            }
-
-            try (BufferedReader reader = Files.newBufferedReader(info, StandardCharsets.UTF_8)) {
-                ModPackage ret = gson.fromJson(reader, ModPackage.class);
-                if (checkVer && !latest.equals(ret.getVersion())) {
-                    throw new IllegalArgumentException("modinfo.json reports a different version than its module");
-                }
-
-                if (latest == null) {
-                    ret.setLatest(true);
-                }
-
-                if (!id.equalsIgnoreCase(ret.getId())) {
-                    throw new IllegalArgumentException("modinfo.json reports a different ID than its module");
-                }
-
-                ret.setKit(this);
-                return ret;
-            }
-        } else {
-            throw new FileNotFoundException(id);
-        }
+        return this.catalog.getLatest(id);
     }
 
     public byte[] getModPackageFile(ModPackage modPackage, String file) throws IOException {
@@ -190,23 +172,16 @@ public class ModKit {
         }
         Path modDir = moduleRepo.resolve(id).resolve(ver);
         Path filePath = modDir.resolve(file);
-        if (Files.isRegularFile(modZip)) {
-            ZipFile zipFile = new ZipFile(modZip.toFile());
-            ZipEntry entry = zipFile.getEntry(file);
-            if (entry == null) {
-                throw new FileNotFoundException(file);
+        try (ModArchive archive = this.getModArchive(modPackage)) {
+            if (archive != null) {
+                return archive.read(file);
             }
+        }
 
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            byte[] buf = new byte[8196];
-            int read;
-            try (InputStream in = zipFile.getInputStream(entry)) {
-                while ((read = in.read(buf)) != -1) {
-                    out.write(buf, 0, read);
-                }
+        if (Files.isRegularFile(modZip)) {
+            try (ZipHandleCache.ZipHandle zip = this.zipHandleCache.acquire(modZip)) {
+                return zip.read(file);
             }
-
-            return out.toByteArray();
         } else if (Files.isDirectory(modDir) && Files.isRegularFile(filePath)) {
             return Files.readAllBytes(filePath);
         } else {
@@ -214,7 +189,45 @@ public class ModKit {
         }
     }
 
-    public Path resolveModPackagePath(ModPackage modPackage, String path) throws IOException {
+    /**
+     * Gets the size of a file in a mod package, or the total size of the files under it if it is a directory.
+     */
+    public long getModPackageFileSize(ModPackage modPackage, String file) throws IOException {
+        try (ModArchive archive = this.getModArchive(modPackage)) {
+            if (archive != null) {
+                ModArchive.Entry entry = archive.getEntry(file);
+                if (entry == null) {
+                    throw new FileNotFoundException(file);
+                }
+
+                return entry.getRealSize();
+            }
+        }
+
+        try (ModPackagePath resolved = this.resolveModPackagePath(modPackage, file)) {
+            Path path = resolved.getPath();
+            if (!Files.isDirectory(path)) {
+                return Files.size(path);
+            }
+
+            try (Stream<Path> walk = Files.walk(path)) {
+                long total = 0;
+                for (Path p : (Iterable<Path>) walk::iterator) {
+                    if (Files.isRegularFile(p)) {
+                        total += Files.size(p);
+                    }
+                }
+
+                return total;
+            }
+        }
+    }
+
+    /**
+     * Resolves a file or directory in a mod package to a path. The result must be closed once the caller is done
+     * with the path, as paths into a zipped mod package are only valid while its zip is held open.
+     */
+    public ModPackagePath resolveModPackagePath(ModPackage modPackage, String path) throws IOException {
         String id = modPackage.getId();
         Path moduleRepo = this.root.resolve("modkit").resolve("modpacks");
         //  Check for a ZIP
@@ -227,11 +240,18 @@ public class ModKit {
         }
         Path modDir = moduleRepo.resolve(id).resolve(ver);
         Path filePath = modDir.resolve(path);
-        if (Files.isRegularFile(modZip)) {
-            final FileSystem zipFs = FileSystems.newFileSystem(modZip, null);
-            return zipFs.getPath(path);
+        if (this.isPrebuilt(modPackage)) {
+            throw new FileNotFoundException(path + " can't be resolved in prebuilt archive of " + id);
+        } else if (Files.isRegularFile(modZip)) {
+            ZipHandleCache.ZipHandle zip = this.zipHandleCache.acquire(modZip);
+            try {
+                return new ModPackagePath(zip.getFileSystem().getPath(path), zip);
+            } catch (IOException | RuntimeException e) {
+                zip.close();
+                throw e;
+            }
         } else if (Files.isDirectory(modDir) && Files.exists(filePath)) {
-            return filePath;
+            return new ModPackagePath(filePath, null);
         } else {
             throw new FileNotFoundException(id);
         }
@@ -250,10 +270,16 @@ public class ModKit {
                 ver = modPackage.getVersion().toString();
             }
             Path modDir = moduleRepo.resolve(id).resolve(ver);
+            try (ModArchive archive = this.getModArchive(modPackage)) {
+                if (archive != null) {
+                    return archive.contains(file) || archive.containsDirectory(file);
+                }
+            }
+
             if (Files.isRegularFile(modZip)) {
-                ZipFile zipFile = new ZipFile(modZip.toFile());
-                ZipEntry entry = zipFile.getEntry(file);
-                return entry != null;
+                try (ZipHandleCache.ZipHandle zip = this.zipHandleCache.acquire(modZip)) {
+                    return zip.contains(file);
+                }
             } else {
                 return Files.isDirectory(modDir) && Files.exists(modDir.resolve(file));
             }
@@ -262,6 +288,69 @@ public class ModKit {
         }
     }
 
+    /**
+     * @return Whether the mod package has a prebuilt archive, which takes precedence over its zip or directory
+     */
+    public boolean isPrebuilt(ModPackage modPackage) {
+        return Files.isRegularFile(this.root.resolve("modkit").resolve("modpacks")
+            .resolve(modPackage.getId() + ModArchive.EXTENSION));
+    }
+
+    /**
+     * Gets the prebuilt archive ({@code <id>.dvmod}) of a mod package. Archives take precedence over zips and
+     * directories.
+     *
+     * Open archives are shared and replaced when their file changes. The returned archive holds a reference that
+     * the caller must drop by closing it, and stays readable until then even if it has been replaced.
+     *
+     * @return The open archive, or null if the mod package is not prebuilt
+     */
+    public ModArchive getModArchive(ModPackage modPackage) throws IOException {
+        return this.getModArchive(modPackage.getId());
+    }
+
+    public ModArchive getModArchive(String id) throws IOException {
+        Path file = this.root.resolve("modkit").resolve("modpacks").resolve(id + ModArchive.EXTENSION);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        FileTime modified = Files.getLastModifiedTime(file);
+        synchronized (this.modArchives) {
+            OpenArchive open = this.modArchives.get(file);
+            if (open != null && open.modified.equals(modified)) {
+                return open.archive.retain();
+            }
+
+            if (open != null) {
+                //  Drop our reference, current readers keep theirs
+                this.modArchives.remove(file);
+                open.archive.close();
+            }
+
+            open = new OpenArchive(ModArchive.open(file), modified);
+            this.modArchives.put(file, open);
+            return open.archive.retain();
+        }
+    }
+
+    /**
+     * Packs a directory mod package into a prebuilt archive next to it, which is used in its place from then on.
+     */
+    public Path createModArchive(ModPackage modPackage) throws IOException {
+        Path moduleRepo = this.root.resolve("modkit").resolve("modpacks");
+        String ver = modPackage.isLatest() ? "latest" : modPackage.getVersion().toString();
+        Path modDir = moduleRepo.resolve(modPackage.getId()).resolve(ver);
+        if (!Files.isDirectory(modDir)) {
+            throw new FileNotFoundException(modDir.toString());
+        }
+
+        Path target = moduleRepo.resolve(modPackage.getId() + ModArchive.EXTENSION);
+        new ModArchiveWriter().write(modDir, target);
+        this.catalog.invalidate(modPackage.getId());
+        return target;
+    }
+
     public ModPackage createModPackage(ModPackage packageDefinition)
         throws IOException, ConstraintViolationException {
         ModPackageConstraints.check(packageDefinition);
@@ -291,15 +380,67 @@ public class ModKit {
             writer.flush();
         }
 
+        this.catalog.invalidate(copy.getId());
+
         return copy;
     }
 
+    /**
+     * @return The shared Gson instance for mod package metadata. Gson is thread-safe, so it is built once.
+     */
     public Gson getGson() {
-        return new GsonBuilder()
-            .setPrettyPrinting()
-            .registerTypeAdapter(Version.class, new VersionGsonAdapter())
-            .registerTypeAdapter(Instant.class, new InstantGsonAdapter())
-            .serializeNulls()
-            .create();
+        return this.gson;
+    }
+
+    /**
+     * Stops watching mod packages, closes open zips and archives, and releases the asset cache. Archives still held
+     * by callers stay open until they are closed too.
+     */
+    @Override
+    public void close() throws IOException {
+        this.catalog.close();
+        this.zipHandleCache.close();
+        synchronized (this.modArchives) {
+            for (OpenArchive open : this.modArchives.values()) {
+                open.archive.close();
+            }
+
+            this.modArchives.clear();
+        }
+
+        if (this.assetAccessService != null) {
+            this.assetAccessService.close();
+        }
+    }
+
+    /**
+     * A path into a mod package, which holds the package's zip open, if it is zipped, until closed.
+     */
+    public static class ModPackagePath implements Closeable {
+        @Getter
+        private final Path path;
+        private final Closeable holder;
+
+        ModPackagePath(Path path, Closeable holder) {
+            this.path = path;
+            this.holder = holder;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.holder != null) {
+                this.holder.close();
+            }
+        }
+    }
+
+    private static class OpenArchive {
+        final ModArchive archive;
+        final FileTime modified;
+
+        OpenArchive(ModArchive archive, FileTime modified) {
+            this.archive = archive;
+            this.modified = modified;
+        }
     }
 }
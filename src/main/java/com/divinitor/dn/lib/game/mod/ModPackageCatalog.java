@@ -0,0 +1,413 @@
+package com.divinitor.dn.lib.game.mod;
+
+import com.divinitor.dn.lib.game.mod.archive.ModArchive;
+import com.divinitor.dn.lib.game.mod.definition.ModPackage;
+import com.divinitor.dn.lib.game.mod.util.Utils;
+import com.divinitor.dn.lib.game.mod.util.ZipHandleCache;
+import com.github.zafarkhaja.semver.Version;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * In-memory catalog of the mod packages under {@code modkit/modpacks}, whether they are prebuilt archives, zips or
+ * directories.
+ *
+ * The metadata of each package is loaded once and kept in memory, and {@link #list()} loads packages in parallel.
+ * Each mod is reloaded when the modification time of its zip or directory changes, when it is explicitly
+ * invalidated, or, if {@link #watch()} has been called, when the file system reports a change under it. Returned
+ * packages are shared and should be treated as read-only.
+ */
+public class ModPackageCatalog implements Closeable {
+
+    private static final String MODINFO = "modinfo.json";
+    private static final String LATEST = "latest";
+    private static final String ZIP_SUFFIX = ".zip";
+
+    private final ModKit kit;
+    private final Path moduleRepo;
+    private final Map<String, Entry> entries;
+    private WatchService watchService;
+    private Thread watchThread;
+
+    public ModPackageCatalog(ModKit kit) {
+        this.kit = kit;
+        this.moduleRepo = kit.getRoot().resolve("modkit").resolve("modpacks");
+        this.entries = new ConcurrentHashMap<>();
+    }
+
+    public ModPackage getPackage(String id, Version version) throws IOException {
+        Entry entry = this.get(id);
+        if (entry == null) {
+            throw new FileNotFoundException(id);
+        }
+
+        Loaded loaded = entry.versions.get(version);
+        if (loaded == null) {
+            throw new FileNotFoundException("Missing modinfo.json for " + id + " v" + version.toString());
+        }
+
+        return loaded.get();
+    }
+
+    public ModPackage getLatest(String id) throws IOException {
+        Entry entry = this.get(id);
+        if (entry == null) {
+            throw new FileNotFoundException(id);
+        }
+
+        return entry.latest.get();
+    }
+
+    /**
+     * Lists the latest version of every mod package, sorted by ID. Mods that aren't loaded yet or are stale are
+     * loaded in parallel. Packages that fail to load are logged and skipped.
+     */
+    public List<ModPackage> list() throws IOException {
+        if (!Files.isDirectory(this.moduleRepo)) {
+            return new ArrayList<>();
+        }
+
+        Set<String> ids;
+        try (Stream<Path> stream = Files.list(this.moduleRepo)) {
+            ids = stream
+                .map(p -> p.getFileName().toString())
+                .map(ModPackageCatalog::idOf)
+                .collect(Collectors.toCollection(TreeSet::new));
+        }
+
+        return ids.parallelStream()
+            .map(id -> {
+                try {
+                    Entry entry = this.get(id);
+                    return entry == null ? null : entry.latest.get();
+                } catch (IOException | RuntimeException e) {
+                    ModKit.LOGGER.warn("Unable to load mod package " + id, e);
+                    return null;
+                }
+            })
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+    }
+
+    public void invalidate(String id) {
+        this.entries.remove(key(id));
+    }
+
+    public void invalidateAll() {
+        this.entries.clear();
+    }
+
+    /**
+     * Starts watching the module repository, so that changes which don't touch a mod's own modification time,
+     * such as edits to a version's modinfo.json, are picked up.
+     */
+    public synchronized void watch() throws IOException {
+        if (this.watchService != null) {
+            return;
+        }
+
+        Files.createDirectories(this.moduleRepo);
+        WatchService service = this.moduleRepo.getFileSystem().newWatchService();
+        this.register(service, this.moduleRepo);
+        try (Stream<Path> stream = Files.walk(this.moduleRepo, 2)) {
+            for (Path dir : (Iterable<Path>) stream.filter(Files::isDirectory)::iterator) {
+                this.register(service, dir);
+            }
+        }
+
+        this.watchService = service;
+        this.watchThread = new Thread(() -> this.watchLoop(service), "modkit-catalog-watch");
+        this.watchThread.setDaemon(true);
+        this.watchThread.start();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.watchService != null) {
+            this.watchService.close();
+            this.watchService = null;
+            this.watchThread = null;
+        }
+    }
+
+    private void register(WatchService service, Path dir) throws IOException {
+        dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+    }
+
+    private void watchLoop(WatchService service) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    this.invalidateAll();
+                    continue;
+                }
+
+                Path changed = dir.resolve((Path) event.context());
+                Path relative = this.moduleRepo.relativize(changed);
+                if (relative.getNameCount() == 0) {
+                    continue;
+                }
+
+                this.invalidate(idOf(relative.getName(0).toString()));
+                if (event.kind() == ENTRY_CREATE && relative.getNameCount() <= 2 && Files.isDirectory(changed)) {
+                    try {
+                        this.register(service, changed);
+                    } catch (IOException | ClosedWatchServiceException e) {
+                        ModKit.LOGGER.warn("Unable to watch " + changed, e);
+                    }
+                }
+            }
+
+            if (!key.reset() && dir.equals(this.moduleRepo)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the catalog entry for a mod, loading or reloading it if it is missing or stale.
+     *
+     * @return The entry, or null if there is no such mod
+     */
+    private Entry get(String id) throws IOException {
+        Path modArchive = this.moduleRepo.resolve(id + ModArchive.EXTENSION);
+        Path modZip = this.moduleRepo.resolve(id + ZIP_SUFFIX);
+        Path modDir = this.moduleRepo.resolve(id);
+        Path source;
+        if (Files.isRegularFile(modArchive)) {
+            source = modArchive;
+        } else if (Files.isRegularFile(modZip)) {
+            source = modZip;
+        } else if (Files.isDirectory(modDir)) {
+            source = modDir;
+        } else {
+            this.entries.remove(key(id));
+            return null;
+        }
+
+        FileTime stamp = Files.getLastModifiedTime(source);
+        //  A packed mod may sit next to the mod's directory, whose versions are still available through getPackage
+        FileTime dirStamp = source != modDir && Files.isDirectory(modDir) ? Files.getLastModifiedTime(modDir) : null;
+        Entry entry = this.entries.get(key(id));
+        if (entry != null && entry.source.equals(source) && entry.stamp.equals(stamp) &&
+            Objects.equals(entry.dirStamp, dirStamp)) {
+            return entry;
+        }
+
+        Map<Version, Loaded> versions = new HashMap<>();
+        if (dirStamp != null) {
+            this.loadVersions(id, modDir, versions);
+        }
+
+        if (source == modArchive) {
+            entry = this.loadPacked(id, source, stamp, dirStamp, versions, () -> {
+                try (ModArchive archive = this.kit.getModArchive(id)) {
+                    if (archive == null) {
+                        throw new FileNotFoundException(modArchive.toString());
+                    }
+
+                    return archive.read(MODINFO);
+                }
+            });
+        } else if (source == modZip) {
+            entry = this.loadPacked(id, source, stamp, dirStamp, versions, () -> {
+                try (ZipHandleCache.ZipHandle zip = this.kit.getZipHandleCache().acquire(modZip)) {
+                    return zip.read(MODINFO);
+                }
+            });
+        } else {
+            entry = this.loadDir(id, modDir, stamp);
+        }
+
+        this.entries.put(key(id), entry);
+        return entry;
+    }
+
+    /**
+     * Loads a mod packed into a single file, which only holds its latest version.
+     *
+     * @param versions The versions in the mod's directory, if it also has one
+     */
+    private Entry loadPacked(String id, Path source, FileTime stamp, FileTime dirStamp,
+                             Map<Version, Loaded> versions, Utils.ThrowingSupplier<byte[]> modInfo) {
+        Loaded latest;
+        try {
+            byte[] data;
+            try {
+                data = modInfo.get();
+            } catch (FileNotFoundException e) {
+                throw new FileNotFoundException("Missing modinfo.json for " + id);
+            }
+
+            try (Reader reader = new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8)) {
+                ModPackage ret = this.kit.getGson().fromJson(reader, ModPackage.class);
+                if (!id.equalsIgnoreCase(ret.getId())) {
+                    throw new IllegalArgumentException("modinfo.json reports a different ID than its module");
+                }
+
+                ret.setKit(this.kit);
+                latest = new Loaded(ret, null);
+            }
+        } catch (Exception e) {
+            latest = new Loaded(null, e);
+        }
+
+        return new Entry(source, stamp, dirStamp, latest, versions);
+    }
+
+    private Entry loadDir(String id, Path modDir, FileTime stamp) throws IOException {
+        Map<Version, Loaded> versions = new HashMap<>();
+        Loaded latest = this.loadVersions(id, modDir, versions);
+        if (latest == null) {
+            Optional<Version> max = versions.keySet().stream().max(Comparator.naturalOrder());
+            latest = max.isPresent() ?
+                versions.get(max.get()) :
+                new Loaded(null, new FileNotFoundException("No versions found for " + id));
+        }
+
+        return new Entry(modDir, stamp, null, latest, versions);
+    }
+
+    /**
+     * Loads each version folder of a mod's directory into the given map.
+     *
+     * @return The "latest" folder, or null if there isn't one
+     */
+    private Loaded loadVersions(String id, Path modDir, Map<Version, Loaded> versions) throws IOException {
+        Loaded latestFolder = null;
+        List<Path> dirs;
+        try (Stream<Path> stream = Files.list(modDir)) {
+            dirs = stream.filter(Files::isDirectory).collect(Collectors.toList());
+        }
+
+        for (Path dir : dirs) {
+            String dirName = dir.getFileName().toString();
+            if (LATEST.equals(dirName)) {
+                latestFolder = this.loadInfo(id, dir.resolve(MODINFO), null);
+                continue;
+            }
+
+            Version version;
+            try {
+                version = Version.valueOf(dirName);
+            } catch (RuntimeException e) {
+                ModKit.LOGGER.warn("Ignoring {} in mod {}, it is not a version", dirName, id);
+                continue;
+            }
+
+            versions.put(version, this.loadInfo(id, dir.resolve(MODINFO), version));
+        }
+
+        return latestFolder;
+    }
+
+    /**
+     * @param version The version the folder is named after, or null for the "latest" folder
+     */
+    private Loaded loadInfo(String id, Path info, Version version) {
+        if (!Files.isRegularFile(info)) {
+            return new Loaded(null, new FileNotFoundException("Missing modinfo.json for " + id +
+                (version == null ? " (latest)" : " v" + version.toString())));
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(info, StandardCharsets.UTF_8)) {
+            ModPackage ret = this.kit.getGson().fromJson(reader, ModPackage.class);
+            if (version != null && !version.equals(ret.getVersion())) {
+                throw new IllegalArgumentException("modinfo.json reports a different version than its module");
+            }
+
+            if (version == null) {
+                ret.setLatest(true);
+            }
+
+            if (!id.equalsIgnoreCase(ret.getId())) {
+                throw new IllegalArgumentException("modinfo.json reports a different ID than its module");
+            }
+
+            ret.setKit(this.kit);
+            return new Loaded(ret, null);
+        } catch (IOException | RuntimeException e) {
+            return new Loaded(null, e);
+        }
+    }
+
+    private static String idOf(String fileName) {
+        String lower = fileName.toLowerCase(Locale.ROOT);
+        for (String suffix : new String[]{ZIP_SUFFIX, ModArchive.EXTENSION}) {
+            if (lower.endsWith(suffix)) {
+                return fileName.substring(0, fileName.length() - suffix.length());
+            }
+        }
+
+        return fileName;
+    }
+
+    private static String key(String id) {
+        return id.toLowerCase(Locale.ROOT);
+    }
+
+    private static class Entry {
+        final Path source;
+        final FileTime stamp;
+        /**
+         * Modification time of the mod's directory when a packed file is the source, or null if there is none.
+         */
+        final FileTime dirStamp;
+        final Loaded latest;
+        final Map<Version, Loaded> versions;
+
+        Entry(Path source, FileTime stamp, FileTime dirStamp, Loaded latest, Map<Version, Loaded> versions) {
+            this.source = source;
+            this.stamp = stamp;
+            this.dirStamp = dirStamp;
+            this.latest = latest;
+            this.versions = versions;
+        }
+    }
+
+    /**
+     * A loaded package, or the error from loading it, so that failures are reported the same way on every call.
+     */
+    private static class Loaded {
+        final ModPackage modPackage;
+        final Exception error;
+
+        Loaded(ModPackage modPackage, Exception error) {
+            this.modPackage = modPackage;
+            this.error = error;
+        }
+
+        ModPackage get() throws IOException {
+            if (this.error instanceof IOException) {
+                throw (IOException) this.error;
+            }
+
+            if (this.error instanceof RuntimeException) {
+                throw (RuntimeException) this.error;
+            }
+
+            if (this.error != null) {
+                throw new IOException(this.error);
+            }
+
+            return this.modPackage;
+        }
+    }
+}
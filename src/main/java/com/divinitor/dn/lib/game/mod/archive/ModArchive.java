@@ -0,0 +1,336 @@
+package com.divinitor.dn.lib.game.mod.archive;
+
+import lombok.Getter;
+import net.openhft.hashing.LongHashFunction;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reader for prebuilt mod package archives ({@code .dvmod}).
+ *
+ * The format is little endian:
+ * <pre>
+ * Header (64 bytes)
+ *     char[8]  magic "DVMOD\0\0\0"
+ *     int      format version
+ *     int      entry count
+ *     int      table slot count (a power of two)
+ *     int      reserved
+ *     long     table offset
+ *     long     names offset
+ *     long     names length
+ *     (padding)
+ * Entry table, open addressed on the xxHash of the entry name, SIZEOF_SLOT bytes per slot
+ *     long     name hash (0 for an empty slot)
+ *     int      name offset into the names block
+ *     int      name length
+ *     long     payload offset
+ *     int      compressed size
+ *     int      real size
+ *     long     xxHash of the uncompressed data
+ * Names block, UTF-8
+ * Payloads, zlib compressed exactly as they are stored in a pak
+ * </pre>
+ *
+ * Because payloads are already in pak encoding, they can be copied into a pak without being inflated.
+ *
+ * Archives are reference counted, so that one opened and shared by {@link com.divinitor.dn.lib.game.mod.ModKit} can
+ * be replaced while others are still reading it. {@link #open(Path)} returns an archive holding one reference, each
+ * {@link #retain()} adds one, and each {@link #close()} drops one. The file is closed when the last is dropped.
+ */
+public class ModArchive implements Closeable {
+
+    public static final String EXTENSION = ".dvmod";
+    public static final byte[] MAGIC = {'D', 'V', 'M', 'O', 'D', 0, 0, 0};
+    public static final int FORMAT_VERSION = 1;
+    public static final int SIZEOF_HEADER = 64;
+    public static final int SIZEOF_SLOT = 40;
+
+    static final LongHashFunction XX = LongHashFunction.xx();
+
+    @Getter
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer table;
+    private final int slotMask;
+    private final byte[] names;
+    @Getter
+    private final int entryCount;
+    private int refCount;
+
+    private ModArchive(Path path, FileChannel channel, ByteBuffer table, int slotCount, byte[] names,
+                       int entryCount) {
+        this.path = path;
+        this.channel = channel;
+        this.table = table;
+        this.slotMask = slotCount - 1;
+        this.names = names;
+        this.entryCount = entryCount;
+        this.refCount = 1;
+    }
+
+    public static ModArchive open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = readFully(channel, 0, SIZEOF_HEADER);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (magic[i] != MAGIC[i]) {
+                    throw new IOException("Not a mod archive: " + path);
+                }
+            }
+
+            int version = header.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported mod archive version " + version + ": " + path);
+            }
+
+            int entryCount = header.getInt();
+            int slotCount = header.getInt();
+            header.getInt();
+            long tableOffset = header.getLong();
+            long namesOffset = header.getLong();
+            long namesLength = header.getLong();
+            if (Integer.bitCount(slotCount) != 1 || entryCount > slotCount || namesLength > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt mod archive header: " + path);
+            }
+
+            ByteBuffer table = readFully(channel, tableOffset, slotCount * SIZEOF_SLOT);
+            ByteBuffer names = readFully(channel, namesOffset, (int) namesLength);
+            return new ModArchive(path, channel, table, slotCount, names.array(), entryCount);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The entry with the given name, or null if there is none
+     */
+    public Entry getEntry(String name) {
+        String normalized = normalize(name);
+        byte[] nameBytes = normalized.getBytes(StandardCharsets.UTF_8);
+        long hash = hashName(nameBytes);
+        for (int slot = (int) hash & this.slotMask; ; slot = (slot + 1) & this.slotMask) {
+            int base = slot * SIZEOF_SLOT;
+            long slotHash = this.table.getLong(base);
+            if (slotHash == 0) {
+                return null;
+            }
+
+            if (slotHash == hash && this.nameEquals(base, nameBytes)) {
+                return this.entryAt(base);
+            }
+        }
+    }
+
+    public boolean contains(String name) {
+        return this.getEntry(name) != null;
+    }
+
+    /**
+     * @return Whether the archive has an entry under the given directory
+     */
+    public boolean containsDirectory(String name) {
+        String prefix = normalize(name) + "/";
+        for (Entry entry : this.getEntries()) {
+            if (entry.getName().startsWith(prefix)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public List<Entry> getEntries() {
+        List<Entry> ret = new ArrayList<>(this.entryCount);
+        for (int slot = 0; slot <= this.slotMask; slot++) {
+            int base = slot * SIZEOF_SLOT;
+            if (this.table.getLong(base) != 0) {
+                ret.add(this.entryAt(base));
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Reads and inflates an entry.
+     */
+    public byte[] read(String name) throws IOException {
+        Entry entry = this.getEntry(name);
+        if (entry == null) {
+            throw new FileNotFoundException(name);
+        }
+
+        return this.read(entry);
+    }
+
+    public byte[] read(Entry entry) throws IOException {
+        ByteBuffer compressed = readFully(this.channel, entry.getOffset(), entry.getCompressedSize());
+        byte[] ret = new byte[entry.getRealSize()];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.array(), 0, compressed.limit());
+            int read = 0;
+            while (read < ret.length) {
+                int n = inflater.inflate(ret, read, ret.length - read);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+
+                read += n;
+            }
+
+            if (read != ret.length) {
+                throw new IOException("Truncated entry " + entry.getName() + " in " + this.path);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt entry " + entry.getName() + " in " + this.path, e);
+        } finally {
+            inflater.end();
+        }
+
+        return ret;
+    }
+
+    /**
+     * Copies an entry's compressed payload to a channel as-is.
+     *
+     * @return The number of bytes written
+     */
+    public long transferTo(Entry entry, WritableByteChannel target) throws IOException {
+        long position = entry.getOffset();
+        long remaining = entry.getCompressedSize();
+        while (remaining > 0) {
+            long n = this.channel.transferTo(position, remaining, target);
+            if (n <= 0) {
+                throw new EOFException("Unexpected end of " + this.path);
+            }
+
+            position += n;
+            remaining -= n;
+        }
+
+        return entry.getCompressedSize();
+    }
+
+    /**
+     * Adds a reference to this archive, which must be dropped with {@link #close()}.
+     *
+     * @throws ClosedChannelException If every reference has already been dropped
+     */
+    public synchronized ModArchive retain() throws ClosedChannelException {
+        if (this.refCount <= 0) {
+            throw new ClosedChannelException();
+        }
+
+        ++this.refCount;
+        return this;
+    }
+
+    /**
+     * Drops a reference to this archive, closing it if it was the last.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.refCount <= 0) {
+            return;
+        }
+
+        if (--this.refCount == 0) {
+            this.channel.close();
+        }
+    }
+
+    private boolean nameEquals(int base, byte[] nameBytes) {
+        int offset = this.table.getInt(base + 8);
+        int length = this.table.getInt(base + 12);
+        if (length != nameBytes.length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (this.names[offset + i] != nameBytes[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private Entry entryAt(int base) {
+        int nameOffset = this.table.getInt(base + 8);
+        int nameLength = this.table.getInt(base + 12);
+        return new Entry(
+            this,
+            new String(this.names, nameOffset, nameLength, StandardCharsets.UTF_8),
+            this.table.getLong(base + 16),
+            this.table.getInt(base + 24),
+            this.table.getInt(base + 28),
+            this.table.getLong(base + 32));
+    }
+
+    static long hashName(byte[] nameBytes) {
+        long hash = XX.hashBytes(nameBytes);
+        //  0 marks an empty slot
+        return hash == 0 ? 1 : hash;
+    }
+
+    static String normalize(String name) {
+        String ret = name.replace('\\', '/');
+        while (ret.startsWith("/")) {
+            ret = ret.substring(1);
+        }
+
+        while (ret.endsWith("/")) {
+            ret = ret.substring(0, ret.length() - 1);
+        }
+
+        return ret;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer ret = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (ret.hasRemaining()) {
+            if (channel.read(ret, position + ret.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+
+        ret.flip();
+        return ret;
+    }
+
+    @Getter
+    public static class Entry {
+        private final ModArchive archive;
+        private final String name;
+        private final long offset;
+        private final int compressedSize;
+        private final int realSize;
+        private final long contentHash;
+
+        Entry(ModArchive archive, String name, long offset, int compressedSize, int realSize, long contentHash) {
+            this.archive = archive;
+            this.name = name;
+            this.offset = offset;
+            this.compressedSize = compressedSize;
+            this.realSize = realSize;
+            this.contentHash = contentHash;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.divinitor.dn.lib.game.mod.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Writes {@link ModArchive} files.
+ */
+public class ModArchiveWriter {
+
+    private final int compressionLevel;
+
+    public ModArchiveWriter() {
+        this(Deflater.BEST_COMPRESSION);
+    }
+
+    public ModArchiveWriter(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Packs every file under a directory into an archive, named by their path relative to the directory.
+     */
+    public void write(Path sourceDir, Path target) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(sourceDir)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+
+        int slotCount = Integer.highestOneBit(Math.max(files.size(), 1) * 2 - 1) << 1;
+        ByteBuffer table = ByteBuffer.allocate(slotCount * ModArchive.SIZEOF_SLOT).order(ByteOrder.LITTLE_ENDIAN);
+        ByteArrayOutputStream names = new ByteArrayOutputStream();
+        int slotMask = slotCount - 1;
+
+        //  Payloads are written first to a temporary file, then everything is assembled once the table is known
+        Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            long payloadBase = ModArchive.SIZEOF_HEADER;
+            try (FileChannel out = FileChannel.open(temp, WRITE, TRUNCATE_EXISTING)) {
+                out.position(payloadBase);
+                for (Path file : files) {
+                    String name = ModArchive.normalize(sourceDir.relativize(file).toString());
+                    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+                    byte[] data = Files.readAllBytes(file);
+                    byte[] compressed = this.compress(data);
+
+                    long offset = out.position();
+                    ByteBuffer payload = ByteBuffer.wrap(compressed);
+                    while (payload.hasRemaining()) {
+                        out.write(payload);
+                    }
+
+                    long hash = ModArchive.hashName(nameBytes);
+                    int slot = (int) hash & slotMask;
+                    while (table.getLong(slot * ModArchive.SIZEOF_SLOT) != 0) {
+                        slot = (slot + 1) & slotMask;
+                    }
+
+                    int base = slot * ModArchive.SIZEOF_SLOT;
+                    table.putLong(base, hash);
+                    table.putInt(base + 8, names.size());
+                    table.putInt(base + 12, nameBytes.length);
+                    table.putLong(base + 16, offset);
+                    table.putInt(base + 24, compressed.length);
+                    table.putInt(base + 28, data.length);
+                    table.putLong(base + 32, ModArchive.XX.hashBytes(data));
+                    names.write(nameBytes);
+                }
+
+                long tableOffset = out.position();
+                table.rewind();
+                while (table.hasRemaining()) {
+                    out.write(table);
+                }
+
+                long namesOffset = out.position();
+                ByteBuffer namesBuffer = ByteBuffer.wrap(names.toByteArray());
+                while (namesBuffer.hasRemaining()) {
+                    out.write(namesBuffer);
+                }
+
+                ByteBuffer header = ByteBuffer.allocate(ModArchive.SIZEOF_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+                header.put(ModArchive.MAGIC);
+                header.putInt(ModArchive.FORMAT_VERSION);
+                header.putInt(files.size());
+                header.putInt(slotCount);
+                header.putInt(0);
+                header.putLong(tableOffset);
+                header.putLong(namesOffset);
+                header.putLong(names.size());
+                header.rewind();
+                out.position(0);
+                while (header.hasRemaining()) {
+                    out.write(header);
+                }
+            }
+
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Compresses data the same way the compiler does when writing a pak.
+     */
+    private byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(Math.max(data.length / 2, 64));
+        Deflater deflater = new Deflater(this.compressionLevel);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(baos, deflater)) {
+            out.write(data);
+        } finally {
+            deflater.end();
+        }
+
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,386 @@
+package com.divinitor.dn.lib.game.mod.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Byte-bounded cache of decompressed game assets.
+ *
+ * Entries are kept in least recently used order, but a new entry that needs others evicted to fit is only admitted
+ * if it has been requested more often than every entry it would displace, going by a {@link FrequencySketch} of
+ * recent requests. A large asset that is read once therefore can't flush the working set, while one that keeps
+ * being read gets in on its second or third miss.
+ *
+ * Pinned keys bypass admission, are never evicted or expired, and stay pinned across invalidation. Pins are counted,
+ * so every {@link #pin(String)} must be matched by an {@link #unpin(String)}.
+ *
+ * If the policy gives the off-heap tier a budget, entries evicted from the heap or turned away by admission move
+ * there instead of being dropped. A heap miss that hits the off-heap tier is copied back out and offered to the
+ * heap again, so an asset that keeps being read is promoted once it is hot enough to be admitted.
+ */
+public class AssetCache implements Closeable {
+
+    /**
+     * Assumed average asset size, used to size the frequency sketch.
+     */
+    private static final int AVERAGE_ASSET_SIZE = 16 * 1024;
+
+    private final AssetCachePolicy policy;
+    private final LinkedHashMap<String, Entry> entries;
+    private final Map<String, Integer> pins;
+    private final FrequencySketch sketch;
+    private final List<EvictionListener> listeners;
+    /**
+     * Null if it has no budget, its storage couldn't be mapped, or the cache is closed.
+     */
+    private OffHeapTier offHeap;
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+
+    public AssetCache(AssetCachePolicy policy) {
+        this.policy = policy;
+        this.entries = new LinkedHashMap<>(256, 0.75F, true);
+        this.pins = new HashMap<>();
+        this.sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE,
+            policy.getMaxBytes() / AVERAGE_ASSET_SIZE));
+        this.listeners = new ArrayList<>();
+        if (policy.getMaxBytes() < 0 || policy.getOffHeapMaxBytes() < 0) {
+            throw new IllegalArgumentException("Cache sizes must not be negative");
+        }
+
+        this.offHeap = policy.getOffHeapMaxBytes() > 0 ? OffHeapTier.create(policy.getOffHeapMaxBytes()) : null;
+    }
+
+    public AssetCachePolicy getPolicy() {
+        return policy;
+    }
+
+    public synchronized void addListener(EvictionListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * @return The cached data, or null if it isn't cached. Either way the request counts towards the key's frequency.
+     */
+    public synchronized byte[] getIfPresent(String key) {
+        this.sketch.increment(key);
+        Entry entry = this.entries.get(key);
+        if (entry != null && !this.pins.containsKey(key) && this.isExpired(entry, System.currentTimeMillis())) {
+            this.remove(key, entry, Cause.EXPIRED);
+            entry = null;
+        }
+
+        if (entry == null) {
+            ++this.misses;
+            return this.offHeap == null ? null : this.promote(key);
+        }
+
+        ++this.hits;
+        entry.lastAccess = System.currentTimeMillis();
+        return entry.value;
+    }
+
+    /**
+     * @return The data if it is in the heap tier, without counting as a request or refreshing its recency
+     */
+    public synchronized byte[] peek(String key) {
+        Entry entry = this.entries.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Offers data to the cache.
+     *
+     * @return Whether the data was admitted
+     */
+    public synchronized boolean put(String key, byte[] value) {
+        long now = System.currentTimeMillis();
+        Entry existing = this.entries.remove(key);
+        if (existing != null) {
+            this.size -= existing.value.length;
+        }
+
+        boolean pinned = this.pins.containsKey(key);
+        if (!pinned && !this.makeRoom(key, value.length, now)) {
+            ++this.rejections;
+            if (this.offHeap != null) {
+                this.offHeap.put(key, value);
+            }
+
+            return false;
+        }
+
+        if (this.offHeap != null) {
+            this.offHeap.remove(key);
+        }
+
+        this.entries.put(key, new Entry(value, now));
+        this.size += value.length;
+        return true;
+    }
+
+    public synchronized void invalidate(String key) {
+        Entry entry = this.entries.remove(key);
+        if (entry != null) {
+            this.size -= entry.value.length;
+        }
+
+        if (this.offHeap != null) {
+            this.offHeap.remove(key);
+        }
+    }
+
+    /**
+     * Drops every entry from both tiers, including pinned ones. Pins themselves are kept.
+     */
+    public synchronized void invalidateAll() {
+        this.entries.clear();
+        this.size = 0;
+        if (this.offHeap != null) {
+            this.offHeap.clear();
+        }
+    }
+
+    /**
+     * Drops every entry and releases the off-heap tier's storage. The cache keeps working afterwards, on the heap
+     * only.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        this.invalidateAll();
+        if (this.offHeap != null) {
+            OffHeapTier offHeap = this.offHeap;
+            this.offHeap = null;
+            offHeap.close();
+        }
+    }
+
+    /**
+     * Pins a key, whether or not it is cached yet. A pinned key is always admitted and is never evicted.
+     */
+    public synchronized void pin(String key) {
+        this.pins.merge(key, 1, Integer::sum);
+    }
+
+    public synchronized void unpin(String key) {
+        Integer count = this.pins.get(key);
+        if (count == null) {
+            throw new IllegalStateException("Not pinned: " + key);
+        }
+
+        if (count == 1) {
+            this.pins.remove(key);
+            if (this.size > this.policy.getMaxBytes()) {
+                //  Pins may have pushed us over capacity, shrink back now that this one can go
+                this.makeRoom(null, 0, System.currentTimeMillis());
+            }
+        } else {
+            this.pins.put(key, count - 1);
+        }
+    }
+
+    public synchronized boolean isPinned(String key) {
+        return this.pins.containsKey(key);
+    }
+
+    public synchronized long getSize() {
+        return this.size;
+    }
+
+    public synchronized int getEntryCount() {
+        return this.entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return this.hits;
+    }
+
+    public synchronized long getMissCount() {
+        return this.misses;
+    }
+
+    public synchronized double getHitRate() {
+        long requests = this.hits + this.misses;
+        return requests == 0 ? 1D : (double) this.hits / requests;
+    }
+
+    public synchronized long getEvictionCount() {
+        return this.evictions;
+    }
+
+    /**
+     * @return How many offered entries were turned away by the admission policy
+     */
+    public synchronized long getRejectionCount() {
+        return this.rejections;
+    }
+
+    public synchronized long getOffHeapSize() {
+        return this.offHeap == null ? 0 : this.offHeap.getSize();
+    }
+
+    public synchronized int getOffHeapEntryCount() {
+        return this.offHeap == null ? 0 : this.offHeap.getEntryCount();
+    }
+
+    public synchronized long getOffHeapHitCount() {
+        return this.offHeap == null ? 0 : this.offHeap.getHitCount();
+    }
+
+    public synchronized long getOffHeapMissCount() {
+        return this.offHeap == null ? 0 : this.offHeap.getMissCount();
+    }
+
+    public synchronized long getOffHeapEvictionCount() {
+        return this.offHeap == null ? 0 : this.offHeap.getEvictionCount();
+    }
+
+    /**
+     * @return How many off-heap reads and writes failed, each of which was treated as a miss or a rejection
+     */
+    public synchronized long getOffHeapFailureCount() {
+        return this.offHeap == null ? 0 : this.offHeap.getFailureCount();
+    }
+
+    /**
+     * Serves a heap miss from the off-heap tier, moving the entry back to the heap if it is now hot enough to be
+     * admitted.
+     */
+    private byte[] promote(String key) {
+        byte[] ret = this.offHeap.get(key);
+        if (ret != null && this.makeRoom(key, ret.length, System.currentTimeMillis())) {
+            this.offHeap.remove(key);
+            this.entries.put(key, new Entry(ret, System.currentTimeMillis()));
+            this.size += ret.length;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Frees enough space for an entry of the given size, if the candidate is worth more than what it displaces.
+     * Expired entries are dropped first, then unpinned entries from least recently used.
+     *
+     * @param candidate The key being admitted, or null to just shrink back to capacity
+     */
+    private boolean makeRoom(String candidate, long needed, long now) {
+        long max = this.policy.getMaxBytes();
+        if (needed > max) {
+            return false;
+        }
+
+        if (this.size + needed <= max) {
+            return true;
+        }
+
+        this.expire(now);
+
+        //  Pick victims without removing them, so that a rejected candidate leaves the cache untouched
+        List<String> victims = new ArrayList<>();
+        long freed = 0;
+        int victimFrequency = 0;
+        for (Map.Entry<String, Entry> e : this.entries.entrySet()) {
+            if (this.size - freed + needed <= max) {
+                break;
+            }
+
+            if (this.pins.containsKey(e.getKey())) {
+                continue;
+            }
+
+            victims.add(e.getKey());
+            freed += e.getValue().value.length;
+            victimFrequency = Math.max(victimFrequency, this.sketch.frequency(e.getKey()));
+        }
+
+        if (this.size - freed + needed > max) {
+            //  Too much is pinned
+            return false;
+        }
+
+        if (candidate != null && this.sketch.frequency(candidate) <= victimFrequency) {
+            return false;
+        }
+
+        for (String victim : victims) {
+            this.remove(victim, this.entries.get(victim), Cause.SIZE);
+        }
+
+        return true;
+    }
+
+    private void expire(long now) {
+        if (this.policy.getExpireAfterAccessMillis() <= 0) {
+            return;
+        }
+
+        //  Access order means the stalest entries come first
+        for (Iterator<Map.Entry<String, Entry>> it = this.entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Entry> e = it.next();
+            if (this.pins.containsKey(e.getKey())) {
+                continue;
+            }
+
+            if (!this.isExpired(e.getValue(), now)) {
+                break;
+            }
+
+            it.remove();
+            this.size -= e.getValue().value.length;
+            this.notifyEviction(e.getKey(), e.getValue().value, Cause.EXPIRED);
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        long expireAfter = this.policy.getExpireAfterAccessMillis();
+        return expireAfter > 0 && now - entry.lastAccess > expireAfter;
+    }
+
+    private void remove(String key, Entry entry, Cause cause) {
+        if (entry == null || this.pins.containsKey(key)) {
+            return;
+        }
+
+        this.entries.remove(key);
+        this.size -= entry.value.length;
+        this.notifyEviction(key, entry.value, cause);
+    }
+
+    private void notifyEviction(String key, byte[] value, Cause cause) {
+        ++this.evictions;
+        if (this.offHeap != null) {
+            this.offHeap.put(key, value);
+        }
+
+        for (EvictionListener listener : this.listeners) {
+            listener.onEviction(key, value, cause);
+        }
+    }
+
+    public enum Cause {
+        SIZE,
+        EXPIRED
+    }
+
+    @FunctionalInterface
+    public interface EvictionListener {
+        /**
+         * Called while the cache is locked, so implementations must be quick and must not call back into the cache.
+         */
+        void onEviction(String key, byte[] value, Cause cause);
+    }
+
+    private static class Entry {
+        final byte[] value;
+        long lastAccess;
+
+        Entry(byte[] value, long lastAccess) {
+            this.value = value;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.divinitor.dn.lib.game.mod.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sizing and expiry settings for an {@link AssetCache}.
+ *
+ * {@link #fromSystemProperties()} reads the following, falling back to the defaults:
+ * <ul>
+ *     <li>{@code modkit.assetCache.maxBytes} - capacity in bytes, with an optional k, m or g suffix</li>
+ *     <li>{@code modkit.assetCache.expireAfterAccessSeconds} - idle expiry, or 0 to keep entries until evicted</li>
+ *     <li>{@code modkit.assetCache.offHeapMaxBytes} - capacity of the off-heap tier, in the same format as the heap
+ *     capacity, or 0 to disable it</li>
+ * </ul>
+ */
+@Getter
+@AllArgsConstructor
+@Builder
+public class AssetCachePolicy {
+
+    public static final String MAX_BYTES_PROPERTY = "modkit.assetCache.maxBytes";
+    public static final String EXPIRE_PROPERTY = "modkit.assetCache.expireAfterAccessSeconds";
+    public static final String OFF_HEAP_MAX_BYTES_PROPERTY = "modkit.assetCache.offHeapMaxBytes";
+
+    public static final long DEFAULT_MAX_BYTES = 50L * 1024L * 1024L;
+
+    public static final AssetCachePolicy DEFAULT = new AssetCachePolicy(DEFAULT_MAX_BYTES, 0, 0);
+
+    /**
+     * Total size of the cached assets, in bytes. Pinned assets count towards this but are never evicted.
+     */
+    private final long maxBytes;
+
+    /**
+     * How long an unpinned asset may go unread before it is dropped, in milliseconds, or 0 for no expiry.
+     */
+    private final long expireAfterAccessMillis;
+
+    /**
+     * Size of the off-heap second tier, in bytes, or 0 for none. Assets evicted from the heap tier, or not admitted
+     * to it, are kept here in a memory-mapped temporary file of this size, so they can be served again without being
+     * decompressed. The file is mapped when the cache is created, and the tier is left out if that fails.
+     */
+    private final long offHeapMaxBytes;
+
+    public static AssetCachePolicy fromSystemProperties() {
+        long maxBytes = parseBytes(System.getProperty(MAX_BYTES_PROPERTY), DEFAULT_MAX_BYTES);
+        long expireSeconds = Long.getLong(EXPIRE_PROPERTY, 0L);
+        long offHeapMaxBytes = parseBytes(System.getProperty(OFF_HEAP_MAX_BYTES_PROPERTY), 0);
+        return new AssetCachePolicy(maxBytes, TimeUnit.SECONDS.toMillis(expireSeconds), offHeapMaxBytes);
+    }
+
+    static long parseBytes(String value, long defaultValue) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+
+        String v = value.trim().toLowerCase(Locale.ROOT);
+        long multiplier = 1;
+        switch (v.charAt(v.length() - 1)) {
+            case 'g':
+                multiplier *= 1024;
+            case 'm':
+                multiplier *= 1024;
+            case 'k':
+                multiplier *= 1024;
+                v = v.substring(0, v.length() - 1).trim();
+                break;
+            default:
+                break;
+        }
+
+        try {
+            return Long.parseLong(v) * multiplier;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid byte size: " + value, e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.divinitor.dn.lib.game.mod.cache;
+
+/**
+ * Approximate access counts for cache keys, used to decide whether a new entry is worth more than the entries it
+ * would push out.
+ *
+ * A count-min sketch of 4-bit counters, four per key. Counts saturate at 15, and every counter is halved once the
+ * number of recorded accesses reaches ten times the sketch width, so old popularity fades.
+ */
+class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97CB3127, 0x5C6D2E8B, 0x1B873593, 0x2C1B3C6D};
+
+    private final byte[][] counters;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int expectedEntries) {
+        int width = Integer.highestOneBit(Math.max(64, Math.min(expectedEntries, 1 << 24)) - 1) << 1;
+        this.counters = new byte[DEPTH][width];
+        this.mask = width - 1;
+        this.sampleSize = width * 10;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = this.indexOf(hash, i);
+            if (this.counters[i][index] < MAX_COUNT) {
+                ++this.counters[i][index];
+                added = true;
+            }
+        }
+
+        if (added && ++this.additions >= this.sampleSize) {
+            this.reset();
+        }
+    }
+
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int ret = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            ret = Math.min(ret, this.counters[i][this.indexOf(hash, i)]);
+        }
+
+        return ret;
+    }
+
+    private void reset() {
+        for (byte[] row : this.counters) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>= 1;
+            }
+        }
+
+        this.additions /= 2;
+    }
+
+    private int indexOf(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & this.mask;
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+}
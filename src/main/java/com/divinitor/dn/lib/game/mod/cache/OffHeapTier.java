@@ -0,0 +1,246 @@
+package com.divinitor.dn.lib.game.mod.cache;
+
+import com.divinitor.dn.lib.game.mod.ModKit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Second cache tier holding decompressed assets outside the Java heap, in a memory-mapped temporary file.
+ *
+ * The whole budget is mapped up front and split into fixed-size blocks, which entries take from and return to a
+ * free list as they come and go. Memory use is therefore fixed at the budget and never waits on the garbage
+ * collector, and the mapping doesn't count against the direct memory limit. Entries are evicted least recently
+ * used first to free enough blocks for a new one.
+ *
+ * Not thread-safe, the owning {@link AssetCache} guards it.
+ */
+class OffHeapTier {
+
+    static final int BLOCK_SIZE = 4096;
+    private static final int BLOCK_SHIFT = 12;
+    private static final int SEGMENT_SHIFT = 30;
+    private static final int BLOCKS_PER_SEGMENT = 1 << (SEGMENT_SHIFT - BLOCK_SHIFT);
+
+    private final long maxBytes;
+    /**
+     * Kept open for the life of the tier, the file is deleted when it is closed.
+     */
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final int[] freeBlocks;
+    private final LinkedHashMap<String, Slot> entries;
+    private int freeCount;
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long failures;
+
+    private OffHeapTier(FileChannel channel, MappedByteBuffer[] segments, int blockCount) {
+        this.maxBytes = (long) blockCount * BLOCK_SIZE;
+        this.channel = channel;
+        this.segments = segments;
+        this.freeBlocks = new int[blockCount];
+        for (int i = 0; i < blockCount; ++i) {
+            this.freeBlocks[i] = blockCount - 1 - i;
+        }
+
+        this.freeCount = blockCount;
+        this.entries = new LinkedHashMap<>(256, 0.75F, true);
+    }
+
+    /**
+     * Maps the tier's storage.
+     *
+     * @return The tier, or null if its storage couldn't be mapped, in which case the cache runs without it
+     * @throws IllegalArgumentException If the budget is smaller than a block
+     */
+    static OffHeapTier create(long maxBytes) {
+        long blocks = maxBytes / BLOCK_SIZE;
+        if (blocks <= 0 || blocks > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid off-heap cache size: " + maxBytes);
+        }
+
+        FileChannel channel = null;
+        try {
+            Path file = Files.createTempFile("modkit-assets-", ".cache");
+            channel = FileChannel.open(file, READ, WRITE, DELETE_ON_CLOSE);
+            long length = blocks * BLOCK_SIZE;
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((length - 1) >>> SEGMENT_SHIFT) + 1];
+            for (int i = 0; i < segments.length; ++i) {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, start,
+                    Math.min(1L << SEGMENT_SHIFT, length - start));
+            }
+
+            return new OffHeapTier(channel, segments, (int) blocks);
+        } catch (IOException | OutOfMemoryError e) {
+            ModKit.LOGGER.warn("Unable to map " + maxBytes + " bytes for the off-heap asset cache, " +
+                "continuing without it", e);
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * @return A heap copy of the cached data, or null if it isn't cached
+     */
+    byte[] get(String key) {
+        Slot slot = this.entries.get(key);
+        if (slot == null) {
+            ++this.misses;
+            return null;
+        }
+
+        byte[] ret = new byte[slot.length];
+        try {
+            for (int i = 0; i < slot.blocks.length; ++i) {
+                int off = i << BLOCK_SHIFT;
+                this.block(slot.blocks[i]).get(ret, off, Math.min(BLOCK_SIZE, slot.length - off));
+            }
+        } catch (InternalError e) {
+            //  An I/O error on the mapped file
+            ++this.failures;
+            ++this.misses;
+            this.remove(key);
+            return null;
+        }
+
+        ++this.hits;
+        return ret;
+    }
+
+    /**
+     * Stores an entry, evicting others to make room. An entry that doesn't fit or can't be written is dropped.
+     */
+    void put(String key, byte[] value) {
+        this.remove(key);
+        int needed = (value.length + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+        if (needed > this.freeBlocks.length) {
+            return;
+        }
+
+        for (Iterator<Map.Entry<String, Slot>> it = this.entries.entrySet().iterator();
+             it.hasNext() && this.freeCount < needed; ) {
+            Slot victim = it.next().getValue();
+            it.remove();
+            this.release(victim);
+            ++this.evictions;
+        }
+
+        int[] blocks = new int[needed];
+        for (int i = 0; i < needed; ++i) {
+            blocks[i] = this.freeBlocks[--this.freeCount];
+        }
+
+        Slot slot = new Slot(blocks, value.length);
+        this.size += value.length;
+        try {
+            for (int i = 0; i < needed; ++i) {
+                int off = i << BLOCK_SHIFT;
+                this.block(blocks[i]).put(value, off, Math.min(BLOCK_SIZE, value.length - off));
+            }
+        } catch (InternalError e) {
+            //  An I/O error on the mapped file, such as the disk filling up
+            ++this.failures;
+            this.release(slot);
+            return;
+        }
+
+        this.entries.put(key, slot);
+    }
+
+    void remove(String key) {
+        Slot slot = this.entries.remove(key);
+        if (slot != null) {
+            this.release(slot);
+        }
+    }
+
+    void clear() {
+        this.entries.values().forEach(this::release);
+        this.entries.clear();
+    }
+
+    /**
+     * Drops every entry and closes the backing file. The mapping itself is released once the segments are garbage
+     * collected, so the tier must not be used afterwards.
+     */
+    void close() throws IOException {
+        this.clear();
+        Arrays.fill(this.segments, null);
+        this.channel.close();
+    }
+
+    long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    long getSize() {
+        return this.size;
+    }
+
+    int getEntryCount() {
+        return this.entries.size();
+    }
+
+    long getHitCount() {
+        return this.hits;
+    }
+
+    long getMissCount() {
+        return this.misses;
+    }
+
+    long getEvictionCount() {
+        return this.evictions;
+    }
+
+    /**
+     * @return How many reads and writes failed on the mapped file
+     */
+    long getFailureCount() {
+        return this.failures;
+    }
+
+    private ByteBuffer block(int block) {
+        ByteBuffer ret = this.segments[block >>> (SEGMENT_SHIFT - BLOCK_SHIFT)].duplicate();
+        ret.position((block & (BLOCKS_PER_SEGMENT - 1)) << BLOCK_SHIFT);
+        return ret;
+    }
+
+    private void release(Slot slot) {
+        for (int block : slot.blocks) {
+            this.freeBlocks[this.freeCount++] = block;
+        }
+
+        this.size -= slot.length;
+    }
+
+    private static class Slot {
+        final int[] blocks;
+        final int length;
+
+        Slot(int[] blocks, int length) {
+            this.blocks = blocks;
+            this.length = length;
+        }
+    }
+}
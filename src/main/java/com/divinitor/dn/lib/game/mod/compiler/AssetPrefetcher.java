@@ -0,0 +1,175 @@
+package com.divinitor.dn.lib.game.mod.compiler;
+
+import com.divinitor.dn.lib.game.mod.DnAssetAccessService;
+import com.divinitor.dn.lib.game.mod.ModKit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Fetches the game assets a compile will copy in the background, in pak order, with
+ * {@link DnAssetAccessService#getAssets(Collection, DnAssetAccessService.AssetConsumer)}.
+ *
+ * Assets are fetched a chunk at a time, and the prefetcher waits for the compiler to claim enough buffered data to
+ * get back under {@code budget} bytes before starting the next chunk. It never waits in the middle of a chunk, as
+ * the service holds the loads of the chunk's remaining assets until it is done with it, and the compiler may be
+ * waiting on one of them. An asset the compiler is already waiting for is handed straight over and never counts
+ * against the budget. Any other asset that arrives when the buffer is full is dropped instead, and like anything
+ * the prefetcher hasn't got to when the compiler asks, the compiler reads it itself.
+ */
+class AssetPrefetcher implements Closeable {
+
+    /**
+     * Most assets to fetch per call to the service.
+     */
+    private static final int CHUNK_SIZE = 64;
+
+    private final DnAssetAccessService assetAccessService;
+    private final long budget;
+    private final Map<String, CompletableFuture<Fetched>> pending;
+    /**
+     * Paths the compiler is waiting for.
+     */
+    private final Set<String> claimed;
+    private long buffered;
+    private boolean blocked;
+    private boolean closed;
+
+    AssetPrefetcher(DnAssetAccessService assetAccessService, List<String> paths, long budget, Executor executor) {
+        this.assetAccessService = assetAccessService;
+        this.budget = budget;
+        this.pending = new HashMap<>();
+        this.claimed = new HashSet<>();
+        //  The same asset may be copied to several destinations, but is only fetched once
+        List<String> unique = new ArrayList<>(new LinkedHashSet<>(paths));
+        for (String path : unique) {
+            this.pending.put(path, new CompletableFuture<>());
+        }
+
+        executor.execute(() -> {
+            try {
+                for (int i = 0; i < unique.size() && this.awaitBudget(); i += CHUNK_SIZE) {
+                    assetAccessService.getAssets(unique.subList(i, Math.min(unique.size(), i + CHUNK_SIZE)),
+                        this::offer);
+                }
+            } catch (IOException | RuntimeException e) {
+                //  Anything not fetched yet is read directly, which reports the error against its own step
+                ModKit.LOGGER.debug("Asset prefetch stopped", e);
+            } finally {
+                this.finish();
+            }
+        });
+    }
+
+    /**
+     * Gets an asset, from the prefetcher if it was asked to fetch it or directly otherwise.
+     */
+    byte[] get(String path) throws IOException {
+        synchronized (this) {
+            //  Left in pending while waiting, so that offer() can hand the data over when it arrives
+            CompletableFuture<Fetched> future = this.pending.get(path);
+            if (future != null && !future.isDone()) {
+                this.claimed.add(path);
+                try {
+                    //  If the prefetcher is blocked, it won't arrive until something else is claimed
+                    while (!future.isDone() && !this.blocked && !this.closed) {
+                        this.wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    this.claimed.remove(path);
+                }
+            }
+
+            this.pending.remove(path);
+            Fetched fetched = future == null ? null : future.getNow(null);
+            if (fetched != null) {
+                if (fetched.buffered) {
+                    this.buffered -= fetched.data.length;
+                    this.notifyAll();
+                }
+
+                StepProfile.recordCacheLookup(fetched.cached);
+                return fetched.data;
+            }
+        }
+
+        return this.assetAccessService.getAsset(path);
+    }
+
+    /**
+     * Waits until the buffer is under budget.
+     *
+     * @return False if the prefetcher was closed
+     */
+    private synchronized boolean awaitBudget() {
+        while (!this.closed && this.buffered >= this.budget) {
+            this.blocked = true;
+            this.notifyAll();
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.closed = true;
+            }
+        }
+
+        this.blocked = false;
+        return !this.closed;
+    }
+
+    private synchronized void offer(String path, byte[] data, boolean cached) {
+        CompletableFuture<Fetched> future = this.pending.get(path);
+        if (this.closed || future == null) {
+            //  Already read directly by the compiler, or the compile is over
+            return;
+        }
+
+        if (this.claimed.contains(path)) {
+            //  The compiler is waiting for it and takes it straight away
+            future.complete(new Fetched(data, cached, false));
+        } else if (this.buffered > 0 && this.buffered + data.length > this.budget) {
+            //  No room, leave it to be read directly
+            this.pending.remove(path);
+            future.complete(null);
+        } else if (future.complete(new Fetched(data, cached, true))) {
+            this.buffered += data.length;
+        }
+
+        this.notifyAll();
+    }
+
+    private synchronized void finish() {
+        //  Leave whatever didn't arrive to be read directly
+        this.closed = true;
+        this.notifyAll();
+    }
+
+    @Override
+    public synchronized void close() {
+        this.closed = true;
+        this.pending.clear();
+        this.claimed.clear();
+        this.buffered = 0;
+        this.notifyAll();
+    }
+
+    private static class Fetched {
+        final byte[] data;
+        final boolean cached;
+        /**
+         * Whether the data counts against the budget until it is claimed.
+         */
+        final boolean buffered;
+
+        Fetched(byte[] data, boolean cached, boolean buffered) {
+            this.data = data;
+            this.cached = cached;
+            this.buffered = buffered;
+        }
+    }
+}
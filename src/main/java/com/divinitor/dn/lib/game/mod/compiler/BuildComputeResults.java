@@ -33,6 +33,17 @@ public class BuildComputeResults {
     @Getter(value = AccessLevel.PROTECTED)
     protected List<ModCompiler.FileBuildStep> steps;
 
+    /**
+     * Game assets copied by the steps, in the order they are read, for prefetching.
+     */
+    @Getter(value = AccessLevel.PROTECTED)
+    protected List<String> gameAssets;
+
+    /**
+     * Per-step timings and sizes from the last compile of these results, or null if they have not been compiled.
+     */
+    protected BuildProfile profile;
+
     public boolean isOk() {
         return !(hasConflictingResources() || hasMissingResources() || hasRejectedTransforms());
     }
@@ -0,0 +1,159 @@
+package com.divinitor.dn.lib.game.mod.compiler;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Per-step profile of a compile, recording where the time went and how well each file compressed.
+ */
+@Getter
+public class BuildProfile {
+
+    /**
+     * The profile of each step, in build order.
+     */
+    private final List<StepProfile> steps;
+
+    /**
+     * Wall time of the whole compile, in nanoseconds.
+     */
+    private long wallNanos;
+
+    public BuildProfile(List<StepProfile> steps) {
+        this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+    }
+
+    void setWallNanos(long wallNanos) {
+        this.wallNanos = wallNanos;
+    }
+
+    public long getFetchNanos() {
+        return this.sum(StepProfile::getFetchNanos);
+    }
+
+    public long getWaitNanos() {
+        return this.sum(StepProfile::getWaitNanos);
+    }
+
+    public long getHashNanos() {
+        return this.sum(StepProfile::getHashNanos);
+    }
+
+    public long getDeflateNanos() {
+        return this.sum(StepProfile::getDeflateNanos);
+    }
+
+    public long getWriteNanos() {
+        return this.sum(StepProfile::getWriteNanos);
+    }
+
+    public long getBytesIn() {
+        return this.sum(StepProfile::getBytesIn);
+    }
+
+    public long getBytesOut() {
+        return this.sum(StepProfile::getBytesOut);
+    }
+
+    public int getCacheHits() {
+        return (int) this.steps.stream().filter(StepProfile::isCacheHit).count();
+    }
+
+    public double getCompressionRatio() {
+        long in = this.getBytesIn();
+        return in == 0 ? 1D : (double) this.getBytesOut() / in;
+    }
+
+    /**
+     * @return Up to {@code n} steps, slowest first
+     */
+    public List<StepProfile> slowest(int n) {
+        return this.steps.stream()
+            .sorted(Comparator.comparingLong(StepProfile::getTotalNanos).reversed())
+            .limit(n)
+            .collect(Collectors.toList());
+    }
+
+    public String report(int n) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Built %d files in %.2f ms: fetch %.2f, wait %.2f, hash %.2f, deflate %.2f, " +
+                "write %.2f ms. %d -> %d bytes (%.1f%%), %d of %d from cache.%n",
+            this.steps.size(), StepProfile.millis(this.wallNanos),
+            StepProfile.millis(this.getFetchNanos()), StepProfile.millis(this.getWaitNanos()),
+            StepProfile.millis(this.getHashNanos()), StepProfile.millis(this.getDeflateNanos()),
+            StepProfile.millis(this.getWriteNanos()),
+            this.getBytesIn(), this.getBytesOut(), this.getCompressionRatio() * 100D,
+            this.getCacheHits(), this.steps.size()));
+
+        List<StepProfile> slowest = this.slowest(n);
+        if (!slowest.isEmpty()) {
+            builder.append("Slowest files:\n");
+            slowest.forEach(s -> builder.append("\t").append(s).append("\n"));
+        }
+
+        return builder.toString();
+    }
+
+    public JsonObject toJson() {
+        JsonObject ret = new JsonObject();
+        ret.addProperty("wallNanos", this.wallNanos);
+        ret.addProperty("fetchNanos", this.getFetchNanos());
+        ret.addProperty("waitNanos", this.getWaitNanos());
+        ret.addProperty("hashNanos", this.getHashNanos());
+        ret.addProperty("deflateNanos", this.getDeflateNanos());
+        ret.addProperty("writeNanos", this.getWriteNanos());
+        ret.addProperty("bytesIn", this.getBytesIn());
+        ret.addProperty("bytesOut", this.getBytesOut());
+        ret.addProperty("compressionRatio", this.getCompressionRatio());
+        ret.addProperty("cacheHits", this.getCacheHits());
+
+        JsonArray steps = new JsonArray();
+        for (StepProfile step : this.steps) {
+            JsonObject s = new JsonObject();
+            s.addProperty("destination", step.getDestination());
+            s.addProperty("mod", step.getModId());
+            s.addProperty("totalNanos", step.getTotalNanos());
+            s.addProperty("fetchNanos", step.getFetchNanos());
+            s.addProperty("waitNanos", step.getWaitNanos());
+            s.addProperty("hashNanos", step.getHashNanos());
+            s.addProperty("deflateNanos", step.getDeflateNanos());
+            s.addProperty("writeNanos", step.getWriteNanos());
+            s.addProperty("bytesIn", step.getBytesIn());
+            s.addProperty("bytesOut", step.getBytesOut());
+            s.addProperty("compressionRatio", step.getCompressionRatio());
+            s.addProperty("prebuilt", step.isPrebuilt());
+            s.addProperty("background", step.isBackground());
+            s.addProperty("cacheHit", step.isCacheHit());
+            steps.add(s);
+        }
+
+        ret.add("steps", steps);
+        return ret;
+    }
+
+    public void writeJson(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(this.toJson(), writer);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.report(10);
+    }
+
+    private long sum(ToLongFunction<StepProfile> f) {
+        return this.steps.stream().mapToLong(f).sum();
+    }
+}
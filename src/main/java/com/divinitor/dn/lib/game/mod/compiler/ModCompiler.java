@@ -1,11 +1,20 @@
 package com.divinitor.dn.lib.game.mod.compiler;
 
+import com.divinitor.dn.lib.game.mod.AssetPathIndex;
 import com.divinitor.dn.lib.game.mod.CompileException;
 import com.divinitor.dn.lib.game.mod.DnAssetAccessService;
+import com.divinitor.dn.lib.game.mod.archive.ModArchive;
+import com.divinitor.dn.lib.game.mod.compiler.processors.ProcessorHints;
+import com.divinitor.dn.lib.game.mod.definition.CopyFromGameDirective;
 import com.divinitor.dn.lib.game.mod.definition.ModPackage;
 import com.divinitor.dn.lib.game.mod.util.Utils;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.Setter;
+
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
 
 public interface ModCompiler {
     BuildComputeResults compute();
@@ -18,6 +27,44 @@ public interface ModCompiler {
         return () -> assetAccessService.getAsset(file);
     }
 
+    /**
+     * Expands copy directives with glob sources into a directive per matching game asset. A glob that matches
+     * nothing is kept as is, so it is reported as missing.
+     */
+    static List<CopyFromGameDirective> expandCopies(DnAssetAccessService assetAccessService,
+                                                    CopyFromGameDirective[] copies) {
+        List<CopyFromGameDirective> ret = new ArrayList<>();
+        if (copies == null) {
+            return ret;
+        }
+
+        for (CopyFromGameDirective directive : copies) {
+            List<String> matches = directive.isGlob() ?
+                assetAccessService.findAssets(directive.getSource()) :
+                null;
+            if (matches == null || matches.isEmpty()) {
+                ret.add(directive);
+                continue;
+            }
+
+            String base = AssetPathIndex.globBase(directive.getSource());
+            String dest = directive.getDest();
+            if (!dest.endsWith("\\") && !dest.endsWith("/")) {
+                dest += "\\";
+            }
+
+            for (String match : matches) {
+                //  A relative glob can match at any depth, so the whole path is kept to keep destinations distinct
+                String relative = base.startsWith("\\") ?
+                    match.substring(base.length()) :
+                    match.substring(1);
+                ret.add(new CopyFromGameDirective(match, dest + relative, directive.getCompressionLevel()));
+            }
+        }
+
+        return ret;
+    }
+
     static Utils.ThrowingSupplier<byte[]> packSource(ModPackage modPackage, String file) {
         return () -> modPackage.getAsset(file);
     }
@@ -29,5 +76,35 @@ public interface ModCompiler {
         private String destination;
         private Utils.ThrowingSupplier<byte[]> source;
         private Integer compressionLevel;
+        private ProcessorHints hints;
+        /**
+         * Estimated relative cost of producing the data, used to schedule heavy steps first.
+         */
+        private long cost;
+        /**
+         * If set, the source is already compressed in a prebuilt archive and is copied as-is.
+         */
+        @Setter
+        private ModArchive.Entry prebuilt;
+        /**
+         * If set, writes the data to a channel a buffer at a time. Compiles use it instead of the source, so the
+         * whole output is never held in memory.
+         */
+        private Utils.ThrowingConsumer<FileChannel> streamSource;
+
+        public FileBuildStep(ModPackage mod, String destination, Utils.ThrowingSupplier<byte[]> source,
+                             Integer compressionLevel) {
+            this(mod, destination, source, compressionLevel, ProcessorHints.DEFAULT, 0, null, null);
+        }
+
+        public FileBuildStep(ModPackage mod, String destination, Utils.ThrowingSupplier<byte[]> source,
+                             Integer compressionLevel, ProcessorHints hints, long cost) {
+            this(mod, destination, source, compressionLevel, hints, cost, null, null);
+        }
+
+        public FileBuildStep(ModPackage mod, String destination, Utils.ThrowingSupplier<byte[]> source,
+                             Utils.ThrowingConsumer<FileChannel> streamSource, Integer compressionLevel) {
+            this(mod, destination, source, compressionLevel, ProcessorHints.DEFAULT, 0, null, streamSource);
+        }
     }
 }
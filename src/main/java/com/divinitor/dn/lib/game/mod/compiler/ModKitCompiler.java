@@ -8,15 +8,18 @@ import com.divinitor.dn.lib.game.mod.definition.BuildInfo;
 import com.divinitor.dn.lib.game.mod.definition.CopyFromGameDirective;
 import com.divinitor.dn.lib.game.mod.definition.CopyFromPackDirective;
 import com.divinitor.dn.lib.game.mod.definition.ModPackage;
+import com.divinitor.dn.lib.game.mod.definition.TableEditDirective;
 import com.divinitor.dn.lib.game.mod.pak.ManagedPak;
 import com.divinitor.dn.lib.game.mod.pak.ManagedPakIndexEntry;
 import com.divinitor.dn.lib.game.mod.util.VersionCached;
 import com.google.common.collect.*;
 
+import java.io.FileNotFoundException;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
 
+import static com.divinitor.dn.lib.game.mod.compiler.ModCompiler.expandCopies;
 import static com.divinitor.dn.lib.game.mod.compiler.ModCompiler.gameSource;
 import static com.divinitor.dn.lib.game.mod.compiler.ModCompiler.packSource;
 
@@ -26,6 +29,7 @@ public class ModKitCompiler implements VersionCached.Versioned, ModCompiler {
     private final DnAssetAccessService assetAccessService;
     private final VersionCached<BuildComputeResults> buildComputeResults;
     private final VersionCached<List<FileBuildStep>> buildSteps;
+    private final TableEditor tableEditor;
     /**
      * Internal state versioning. Used to determine if build lists need to be rebuilt.
      */
@@ -40,6 +44,7 @@ public class ModKitCompiler implements VersionCached.Versioned, ModCompiler {
         modPacks = new LinkedList<>();
         modPackMap = new HashMap<>();
         assetAccessService = kit.getAssetAccessService();
+        tableEditor = new TableEditor(assetAccessService);
     }
 
     public void addPackage(ModPackage modPackage) {
@@ -95,10 +100,11 @@ public class ModKitCompiler implements VersionCached.Versioned, ModCompiler {
 
         SetMultimap<String, String> destinationFiles = MultimapBuilder.hashKeys().linkedHashSetValues().build();
         List<FileBuildStep> steps = results.steps;
+        Map<String, TableEditMerger> tableEdits = new LinkedHashMap<>();
 
         for (ModPackage modPack : modPacks) {
             BuildInfo build = modPack.getBuild();
-            for (CopyFromGameDirective directive : build.getCopy()) {
+            for (CopyFromGameDirective directive : expandCopies(assetAccessService, build.getCopy())) {
                 String src = directive.getSource();
                 if (!assetAccessService.contains(src)) {
                     results.missing.put(modPack.getId(), "pak::" + src);
@@ -126,12 +132,45 @@ public class ModKitCompiler implements VersionCached.Versioned, ModCompiler {
                     directive.getCompressionLevel()));
             }
 
-            //  TODO table edits
-            //  Implementation has to be different from SingleModCompiler since we have to merge table edits together
+            //  Table edits are gathered per table and merged below so each table is only rebuilt once
+            if (build.getEditTable() != null) {
+                for (TableEditDirective directive : build.getEditTable()) {
+                    String tableName = directive.getTableName();
+                    if (!tableName.endsWith(".dnt")) {
+                        tableName = tableName + ".dnt";
+                    }
+
+                    if (!assetAccessService.contains(tableName)) {
+                        results.missing.put(modPack.getId(), "pak::" + tableName);
+                        continue;
+                    }
+
+                    String dest;
+                    try {
+                        dest = assetAccessService.resolve(tableName);
+                    } catch (FileNotFoundException fnfe) {
+                        results.missing.put(modPack.getId(), "pak::" + tableName);
+                        continue;
+                    }
+
+                    tableEdits.computeIfAbsent(dest, TableEditMerger::new).add(modPack, directive);
+                }
+            }
+        }
+
+        for (TableEditMerger merger : tableEdits.values()) {
+            TableEditDirective merged = merger.merge();
+            results.conflicts.addAll(merger.getConflicts());
+            results.rejected.putAll(merger.getRejects());
+
+            String dest = merger.getTableName();
+            destinationFiles.put(dest, merger.getFirstMod().getId());
+            steps.add(new FileBuildStep(merger.getFirstMod(), dest, tableEditor.tableEdit(dest, merged),
+                tableEditor.tableStream(dest, merged), merged.getCompressionLevel()));
         }
 
         destinationFiles.asMap().entrySet().stream()
-            .filter(e -> !e.getValue().isEmpty())
+            .filter(e -> e.getValue().size() > 1)
             .forEach((e) -> results.conflicts.add(BuildConflict.builder()
                 .file(e.getKey())
                 .conflictingModIds(new LinkedHashSet<>(e.getValue()))
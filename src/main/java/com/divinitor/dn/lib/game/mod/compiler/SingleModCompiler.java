@@ -7,38 +7,80 @@ import com.divinitor.dn.lib.game.mod.CompileException;
 import com.divinitor.dn.lib.game.mod.DnAssetAccessService;
 import com.divinitor.dn.lib.game.mod.ModKit;
 import com.divinitor.dn.lib.game.mod.UnsupportedVersionException;
+import com.divinitor.dn.lib.game.mod.archive.ModArchive;
+import com.divinitor.dn.lib.game.mod.compiler.processors.Processor;
+import com.divinitor.dn.lib.game.mod.compiler.processors.ProcessorHints;
 import com.divinitor.dn.lib.game.mod.compiler.processors.Processors;
 import com.divinitor.dn.lib.game.mod.definition.*;
+import com.divinitor.dn.lib.game.mod.jfr.CompilePhaseEvent;
+import com.divinitor.dn.lib.game.mod.jfr.ModKitEvents;
+import com.divinitor.dn.lib.game.mod.metrics.Histogram;
+import com.divinitor.dn.lib.game.mod.metrics.MetricsRegistry;
 import com.divinitor.dn.lib.game.mod.pak.ManagedPak;
 import com.divinitor.dn.lib.game.mod.pak.ManagedPakIndexEntry;
 import com.divinitor.dn.lib.game.mod.pak.ManagedPakModIndexEntry;
+import com.divinitor.dn.lib.game.mod.uistring.UiStringCache;
 import com.divinitor.dn.lib.game.mod.util.Utils;
 import com.google.common.base.Strings;
 import com.google.common.collect.MultimapBuilder;
 import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import net.openhft.hashing.LongHashFunction;
 
 import java.io.FileNotFoundException;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.stream.IntStream;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 
-import static com.divinitor.dn.lib.game.mod.compiler.ModCompiler.gameSource;
+import static com.divinitor.dn.lib.game.mod.compiler.ModCompiler.expandCopies;
 import static com.divinitor.dn.lib.game.mod.compiler.ModCompiler.packSource;
 import static com.divinitor.dn.lib.game.mod.pak.ManagedPakModIndexEntry.*;
 import static java.nio.file.StandardOpenOption.*;
 
 public class SingleModCompiler implements ModCompiler {
 
+    /**
+     * Most processor steps to run ahead of the writer.
+     */
+    private static final int WINDOW_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * Most prefetched game asset data to hold ahead of the writer.
+     */
+    private static final long PREFETCH_BUDGET = 64L * 1024L * 1024L;
+
+    /**
+     * Size of the buffer streamed steps are deflated through.
+     */
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Runs I/O-bound processors, which would otherwise tie up common pool threads while they wait.
+     */
+    private static final ExecutorService IO_EXECUTOR = Executors.newFixedThreadPool(4, new ThreadFactoryBuilder()
+        .setNameFormat("modkit-io-%d")
+        .setDaemon(true)
+        .build());
 
     private final ModKit kit;
     private final DnAssetAccessService assetAccessService;
@@ -46,6 +88,7 @@ public class SingleModCompiler implements ModCompiler {
     private Path target;
     private BuildComputeResults buildComputeResults;
     private TableEditor tableEditor;
+    private volatile AssetPrefetcher prefetcher;
 
     public SingleModCompiler(ModKit kit) {
         this.kit = kit;
@@ -72,11 +115,13 @@ public class SingleModCompiler implements ModCompiler {
             return this.buildComputeResults;
         }
 
+        CompilePhaseEvent event = ModKitEvents.AVAILABLE ? CompilePhaseEvent.start() : null;
         BuildComputeResults results = new BuildComputeResults();
         results.missing = MultimapBuilder.hashKeys().hashSetValues().build();
         results.conflicts = new ArrayList<>();
         results.rejected = MultimapBuilder.hashKeys().hashSetValues().build();
         results.steps = new ArrayList<>();
+        results.gameAssets = new ArrayList<>();
 
         SetMultimap<String, String> destinationFiles = MultimapBuilder.hashKeys().linkedHashSetValues().build();
         List<FileBuildStep> steps = results.steps;
@@ -84,7 +129,10 @@ public class SingleModCompiler implements ModCompiler {
         BuildInfo build = this.modPack.getBuild();
 
         if (build.getCopy() != null) {
-            for (CopyFromGameDirective directive : build.getCopy()) {
+            //  Copy in storage order, so game assets are read sequentially from each pak
+            List<CopyFromGameDirective> copies = expandCopies(this.assetAccessService, build.getCopy());
+            copies.sort(Comparator.comparingLong(d -> this.location(d.getSource())));
+            for (CopyFromGameDirective directive : copies) {
                 String src = directive.getSource();
                 if (!this.assetAccessService.contains(src)) {
                     results.missing.put(this.modPack.getId(), "pak::" + src);
@@ -94,29 +142,63 @@ public class SingleModCompiler implements ModCompiler {
                 String dest = directive.getDest();
                 destinationFiles.put(dest, this.modPack.getId());
 
-                steps.add(new FileBuildStep(this.modPack, dest, gameSource(this.assetAccessService, src),
+                results.gameAssets.add(src);
+                steps.add(new FileBuildStep(this.modPack, dest, this.gameSource(src),
                     directive.getCompressionLevel()));
             }
         }
 
         if (build.getAdd() != null) {
-            for (CopyFromPackDirective directive : build.getAdd()) {
-                String src = directive.getSource();
-                if (!this.modPack.hasAsset(src)) {
-                    results.missing.put(this.modPack.getId(), "mod::" + src);
-                    continue;
-                }
-
-                String dest = directive.getDest();
-                destinationFiles.put(dest, this.modPack.getId());
-                Utils.ThrowingSupplier<byte[]> source;
-                if (Strings.isNullOrEmpty(directive.getProcessor())) {
-                    source = packSource(this.modPack, src);
-                } else {
-                    source = Processors.getProcessor(directive.getProcessor()).process(this.modPack, src);
+            ModArchive archive = this.modArchive();
+            try {
+                for (CopyFromPackDirective directive : build.getAdd()) {
+                    String src = directive.getSource();
+                    if (!this.modPack.hasAsset(src)) {
+                        results.missing.put(this.modPack.getId(), "mod::" + src);
+                        continue;
+                    }
+
+                    String dest = directive.getDest();
+                    if (Strings.isNullOrEmpty(directive.getProcessor())) {
+                        destinationFiles.put(dest, this.modPack.getId());
+                        FileBuildStep step = new FileBuildStep(this.modPack, dest, packSource(this.modPack, src),
+                            directive.getCompressionLevel());
+                        if (archive != null) {
+                            step.setPrebuilt(archive.getEntry(src));
+                        }
+
+                        steps.add(step);
+                    } else {
+                        Processor processor;
+                        try {
+                            processor = Processors.getProcessor(directive.getProcessor());
+                        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                            //  Unknown processor, or a pipeline whose stages can't be chained
+                            results.rejected.put(this.modPack.getId(), BuildReject.builder()
+                                .path("mod::" + src)
+                                .reason(e.getMessage())
+                                .build());
+                            continue;
+                        }
+
+                        ProcessorHints hints = processor.getHints();
+                        if (hints.isDirectorySource() && archive != null) {
+                            //  Prebuilt archives only hold files, there's no directory to hand the processor
+                            results.rejected.put(this.modPack.getId(), BuildReject.builder()
+                                .path("mod::" + src)
+                                .reason("Processor " + directive.getProcessor() +
+                                    " needs a source directory, which a prebuilt archive can't provide")
+                                .build());
+                            continue;
+                        }
+
+                        destinationFiles.put(dest, this.modPack.getId());
+                        steps.add(new FileBuildStep(this.modPack, dest, processor.process(this.modPack, src),
+                            directive.getCompressionLevel(), hints, hints.estimateCost(this.sourceSize(src))));
+                    }
                 }
-
-                steps.add(new FileBuildStep(this.modPack, dest, source, directive.getCompressionLevel()));
+            } finally {
+                this.close(archive);
             }
         }
 
@@ -141,7 +223,7 @@ public class SingleModCompiler implements ModCompiler {
                 }
 
                 steps.add(new FileBuildStep(this.modPack, dest, tableEditor.tableEdit(tableName, directive),
-                    directive.getCompressionLevel()));
+                    tableEditor.tableStream(tableName, directive), directive.getCompressionLevel()));
             }
         }
 
@@ -153,10 +235,204 @@ public class SingleModCompiler implements ModCompiler {
                 .build()));
 
         this.buildComputeResults = results;
+        if (event != null) {
+            event.finish(this.modPack.getId(), "compute", steps.size(), 0);
+        }
 
         return results;
     }
 
+    private long location(String src) {
+        try {
+            return this.assetAccessService.getLocation(src);
+        } catch (FileNotFoundException e) {
+            //  Reported as missing
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Reads a game asset through the running compile's prefetcher, if there is one.
+     */
+    private Utils.ThrowingSupplier<byte[]> gameSource(String src) {
+        return () -> {
+            AssetPrefetcher prefetcher = this.prefetcher;
+            return prefetcher != null ? prefetcher.get(src) : this.assetAccessService.getAsset(src);
+        };
+    }
+
+    /**
+     * Holds the archives of prebuilt steps open for the compile. A step whose archive has been replaced and closed
+     * since it was computed is read from the mod package again instead.
+     */
+    private List<ModArchive> retainArchives(List<FileBuildStep> steps) {
+        Map<ModArchive, Boolean> retained = new IdentityHashMap<>();
+        for (FileBuildStep step : steps) {
+            if (step.getPrebuilt() == null) {
+                continue;
+            }
+
+            ModArchive archive = step.getPrebuilt().getArchive();
+            Boolean open = retained.get(archive);
+            if (open == null) {
+                try {
+                    archive.retain();
+                    open = true;
+                } catch (ClosedChannelException e) {
+                    open = false;
+                }
+
+                retained.put(archive, open);
+            }
+
+            if (!open) {
+                step.setPrebuilt(null);
+            }
+        }
+
+        List<ModArchive> ret = new ArrayList<>();
+        retained.forEach((archive, open) -> {
+            if (open) {
+                ret.add(archive);
+            }
+        });
+        return ret;
+    }
+
+    private void close(ModArchive archive) {
+        if (archive != null) {
+            try {
+                archive.close();
+            } catch (IOException e) {
+                ModKit.LOGGER.warn("Unable to close archive " + archive.getPath(), e);
+            }
+        }
+    }
+
+    /**
+     * @return The mod's prebuilt archive, which must be closed, or null if it has none
+     */
+    private ModArchive modArchive() {
+        try {
+            return this.kit.getModArchive(this.modPack);
+        } catch (IOException e) {
+            ModKit.LOGGER.warn("Unable to open archive for " + this.modPack, e);
+            return null;
+        }
+    }
+
+    private long sourceSize(String src) {
+        try {
+            return this.kit.getModPackageFileSize(this.modPack, src);
+        } catch (IOException e) {
+            //  Only used for scheduling
+            return 0;
+        }
+    }
+
+    /**
+     * Runs parallel-safe steps in the background, heaviest first, with at most {@link #WINDOW_SIZE} of them started
+     * but not yet taken by the writer, so that the processor output held in memory stays bounded. A step the writer
+     * reaches before it was started, or that isn't parallel-safe, is run by the writer itself.
+     *
+     * Only used by the writing thread.
+     */
+    private static class StepWindow {
+        private final List<FileBuildStep> steps;
+        private final StepProfile[] profiles;
+        private final CompletableFuture<byte[]>[] pending;
+        private final boolean[] taken;
+        private final Integer[] order;
+        private int next;
+        private int outstanding;
+
+        @SuppressWarnings("unchecked")
+        StepWindow(List<FileBuildStep> steps, StepProfile[] profiles) {
+            this.steps = steps;
+            this.profiles = profiles;
+            this.pending = new CompletableFuture[steps.size()];
+            this.taken = new boolean[steps.size()];
+            this.order = IntStream.range(0, steps.size())
+                .filter(i -> steps.get(i).getHints() != null && steps.get(i).getHints().isParallelSafe())
+                .boxed()
+                .toArray(Integer[]::new);
+            Arrays.sort(this.order, (a, b) -> Long.compare(steps.get(b).getCost(), steps.get(a).getCost()));
+        }
+
+        /**
+         * Starts steps until the window is full.
+         */
+        void fill() {
+            while (this.outstanding < WINDOW_SIZE && this.next < this.order.length) {
+                int i = this.order[this.next++];
+                if (this.taken[i]) {
+                    continue;
+                }
+
+                FileBuildStep step = this.steps.get(i);
+                StepProfile profile = this.profiles[i];
+                Executor executor = step.getHints().getWorkload() == ProcessorHints.Workload.CPU ?
+                    ForkJoinPool.commonPool() : IO_EXECUTOR;
+                this.pending[i] = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return profile.fetch(step);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor);
+                ++this.outstanding;
+            }
+        }
+
+        /**
+         * Gets a step's data, waiting for it if it was started in the background and fetching it now otherwise.
+         */
+        byte[] take(int i) throws Exception {
+            this.taken[i] = true;
+            CompletableFuture<byte[]> future = this.pending[i];
+            if (future == null) {
+                return this.profiles[i].fetch(this.steps.get(i));
+            }
+
+            this.pending[i] = null;
+            try {
+                long waitStart = System.nanoTime();
+                byte[] ret = await(future);
+                this.profiles[i].setWaitNanos(System.nanoTime() - waitStart);
+                this.profiles[i].setBackground(true);
+                return ret;
+            } finally {
+                --this.outstanding;
+                this.fill();
+            }
+        }
+
+        /**
+         * Cancels the steps that haven't been taken. Those not yet running never start.
+         */
+        void cancel() {
+            for (int i = 0; i < this.pending.length; i++) {
+                if (this.pending[i] != null) {
+                    this.pending[i].cancel(false);
+                    this.pending[i] = null;
+                }
+            }
+        }
+    }
+
+    private static byte[] await(CompletableFuture<byte[]> future) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+
+            throw e;
+        }
+    }
+
     @Override
     public void compile() throws CompileException {
         BuildComputeResults results = this.buildComputeResults;
@@ -186,28 +462,78 @@ public class SingleModCompiler implements ModCompiler {
         LongHashFunction xx = LongHashFunction.xx();
         ManagedPakIndexEntry[] fileIndex = mPak.getFileIndex();
 
+        StepProfile[] profiles = new StepProfile[steps.size()];
+        for (int i = 0; i < profiles.length; i++) {
+            profiles[i] = new StepProfile(steps.get(i).getDestination(), steps.get(i).getMod().getId());
+        }
+
         long end;
+        long compileStart = System.nanoTime();
 
+        List<ModArchive> archives = this.retainArchives(steps);
+        StepWindow window = new StepWindow(steps, profiles);
+        List<String> pinned = this.pinSharedAssets();
+        this.prefetcher = results.gameAssets.isEmpty() ? null :
+            new AssetPrefetcher(this.assetAccessService, results.gameAssets, PREFETCH_BUDGET, IO_EXECUTOR);
         try (FileChannel channel = FileChannel.open(this.target, WRITE, CREATE, TRUNCATE_EXISTING, SPARSE)) {
             //  We'll write the header later
             channel.position(ManagedPak.SIZEOF_HEADER);
+            CompilePhaseEvent event = ModKitEvents.AVAILABLE ? CompilePhaseEvent.start() : null;
+            window.fill();
             int i = 0;
             for (FileBuildStep step : steps) {
+                StepProfile profile = profiles[i];
                 try {
                     long start = channel.position();
-                    byte[] data = step.getSource().get();
-
+                    if (step.getPrebuilt() != null) {
+                        //  Already in pak encoding, copy it straight across
+                        ModArchive.Entry prebuilt = step.getPrebuilt();
+                        long transferStart = System.nanoTime();
+                        prebuilt.getArchive().transferTo(prebuilt, channel);
+                        profile.setWriteNanos(System.nanoTime() - transferStart);
+                        int compressedSize = (int) (channel.position() - start);
+                        profile.setPrebuilt(true);
+                        profile.setBytesIn(prebuilt.getRealSize());
+                        profile.setBytesOut(compressedSize);
+                        fileIndex[i] = ManagedPakIndexEntry.builder()
+                            .filePath(step.getDestination())
+                            .offset((int) start)
+                            .compressedSize(compressedSize)
+                            .rawSize(compressedSize)
+                            .realSize(prebuilt.getRealSize())
+                            .unknownA(0)
+                            .contentHash(prebuilt.getContentHash())
+                            .remainder(ManagedPakIndexEntry.REMAINDER_INSTANCE)
+                            .build();
+                        continue;
+                    }
+
+                    if (step.getStreamSource() != null) {
+                        fileIndex[i] = writeStreamed(step, profile, channel, xx);
+                        continue;
+                    }
+
+                    byte[] data = window.take(i);
+
+                    long hashStart = System.nanoTime();
                     long hash = xx.hashBytes(data);
+                    profile.setHashNanos(System.nanoTime() - hashStart);
 
-                    OutputStream out = Channels.newOutputStream(channel);   //  DO NOT CLOSE THIS STREAM
+                    //  DO NOT CLOSE THIS STREAM
+                    TimedOutputStream out = new TimedOutputStream(Channels.newOutputStream(channel));
+                    long deflateStart = System.nanoTime();
                     DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(
                         out,
                         new Deflater(Optional.ofNullable(step.getCompressionLevel()).orElse(Deflater.BEST_COMPRESSION)));
                     deflaterOutputStream.write(data);
                     deflaterOutputStream.finish();
                     deflaterOutputStream.flush();
+                    profile.setDeflateNanos(System.nanoTime() - deflateStart - out.nanos);
+                    profile.setWriteNanos(out.nanos);
 
                     int compressedSize = (int) (channel.position() - start);
+                    profile.setBytesIn(data.length);
+                    profile.setBytesOut(compressedSize);
                     ManagedPakIndexEntry entry = ManagedPakIndexEntry.builder()
                         .filePath(step.getDestination())
                         .offset((int) start)
@@ -228,6 +554,14 @@ public class SingleModCompiler implements ModCompiler {
                 }
             }
 
+            if (event != null) {
+                event.finish(this.modPack.getId(), "files", steps.size(),
+                    channel.position() - ManagedPak.SIZEOF_HEADER);
+            }
+
+            //  Each phase checks for itself, in case a recording started partway through the compile
+            event = ModKitEvents.AVAILABLE ? CompilePhaseEvent.start() : null;
+
             //  Write mod index
             mPak.setModPackIndexTableOffset((int) channel.position());
             LittleEndianDataOutputStream out = new LittleEndianDataOutputStream(Channels.newOutputStream(channel));
@@ -252,6 +586,11 @@ public class SingleModCompiler implements ModCompiler {
             }
 
             end = channel.position();
+            if (event != null) {
+                event.finish(this.modPack.getId(), "index", steps.size(), end - mPak.getModPackIndexTableOffset());
+            }
+
+            event = ModKitEvents.AVAILABLE ? CompilePhaseEvent.start() : null;
 
             if (channel.position() <= ManagedPak.HALF_GIGABYTE) {
                 channel.position(ManagedPak.HALF_GIGABYTE);
@@ -272,8 +611,20 @@ public class SingleModCompiler implements ModCompiler {
             out.writeInt(mPak.getVersion());
             out.writeInt(mPak.getFileCount());
             out.writeInt(mPak.getFileIndexTableOffset());
+            if (event != null) {
+                event.finish(this.modPack.getId(), "header", steps.size(), ManagedPak.SIZEOF_HEADER);
+            }
         } catch (IOException e) {
             throw new CompileException("Failed to write output", e);
+        } finally {
+            if (this.prefetcher != null) {
+                this.prefetcher.close();
+                this.prefetcher = null;
+            }
+
+            window.cancel();
+            this.unpin(pinned);
+            archives.forEach(this::close);
         }
 
         try {
@@ -282,6 +633,137 @@ public class SingleModCompiler implements ModCompiler {
         } catch (IOException e) {
             //  Don't care
         }
+
+        BuildProfile profile = new BuildProfile(Arrays.asList(profiles));
+        profile.setWallNanos(System.nanoTime() - compileStart);
+        results.setProfile(profile);
+        this.recordMetrics(profile);
+        if (ModKit.LOGGER.isDebugEnabled()) {
+            ModKit.LOGGER.debug(profile.report(10));
+        }
+    }
+
+    /**
+     * Writes a step that has a stream source. The data is streamed into a temporary file, which is mapped to hash it
+     * and then deflated into the pak a buffer at a time, so it is never held on the heap as a whole.
+     */
+    private static ManagedPakIndexEntry writeStreamed(FileBuildStep step, StepProfile profile, FileChannel channel,
+                                                      LongHashFunction xx) throws Exception {
+        long start = channel.position();
+        Path staging = Files.createTempFile("modkit-step-", ".tmp");
+        try (FileChannel in = FileChannel.open(staging, READ, WRITE, DELETE_ON_CLOSE)) {
+            profile.stream(step, in);
+            long size = in.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Asset is too large for a pak: " + size + " bytes");
+            }
+
+            MappedByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            long hashStart = System.nanoTime();
+            long hash = xx.hashBytes(data.duplicate());
+            profile.setHashNanos(System.nanoTime() - hashStart);
+
+            //  DO NOT CLOSE THIS STREAM
+            TimedOutputStream out = new TimedOutputStream(Channels.newOutputStream(channel));
+            long deflateStart = System.nanoTime();
+            Deflater deflater = new Deflater(
+                Optional.ofNullable(step.getCompressionLevel()).orElse(Deflater.BEST_COMPRESSION));
+            try {
+                DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(out, deflater);
+                byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+                while (data.hasRemaining()) {
+                    int len = Math.min(buffer.length, data.remaining());
+                    data.get(buffer, 0, len);
+                    deflaterOutputStream.write(buffer, 0, len);
+                }
+
+                deflaterOutputStream.finish();
+                deflaterOutputStream.flush();
+            } finally {
+                deflater.end();
+            }
+
+            profile.setDeflateNanos(System.nanoTime() - deflateStart - out.nanos);
+            profile.setWriteNanos(out.nanos);
+
+            int compressedSize = (int) (channel.position() - start);
+            profile.setBytesIn(size);
+            profile.setBytesOut(compressedSize);
+            return ManagedPakIndexEntry.builder()
+                .filePath(step.getDestination())
+                .offset((int) start)
+                .compressedSize(compressedSize)
+                .rawSize(compressedSize)
+                .realSize((int) size)
+                .unknownA(0)
+                .contentHash(hash)
+                .remainder(ManagedPakIndexEntry.REMAINDER_INSTANCE)
+                .build();
+        }
+    }
+
+    /**
+     * Pins the game assets that several steps, or repeated builds, are likely to read, so the asset cache can't
+     * drop them partway through the build. These are the tables being edited and, if any step runs the uistring
+     * processor, uistring.xml.
+     *
+     * @return The pinned paths, to be passed to {@link #unpin(List)}
+     */
+    private List<String> pinSharedAssets() {
+        Set<String> paths = new LinkedHashSet<>();
+        BuildInfo build = this.modPack.getBuild();
+        if (build.getEditTable() != null) {
+            for (TableEditDirective directive : build.getEditTable()) {
+                String tableName = directive.getTableName();
+                paths.add(tableName.endsWith(".dnt") ? tableName : tableName + ".dnt");
+            }
+        }
+
+        if (build.getAdd() != null) {
+            for (CopyFromPackDirective directive : build.getAdd()) {
+                String processor = directive.getProcessor();
+                if (processor != null && processor.toLowerCase().contains("uistring")) {
+                    paths.add(UiStringCache.UISTRING_PATH);
+                    break;
+                }
+            }
+        }
+
+        List<String> ret = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            try {
+                this.assetAccessService.pin(path);
+                ret.add(path);
+            } catch (FileNotFoundException e) {
+                //  Reported as missing by compute
+            }
+        }
+
+        return ret;
+    }
+
+    private void unpin(List<String> paths) {
+        for (String path : paths) {
+            try {
+                this.assetAccessService.unpin(path);
+            } catch (FileNotFoundException | RuntimeException e) {
+                ModKit.LOGGER.warn("Unable to unpin " + path, e);
+            }
+        }
+    }
+
+    private void recordMetrics(BuildProfile profile) {
+        MetricsRegistry metrics = this.kit.getMetrics();
+        metrics.counter("compile.builds").increment();
+        metrics.counter("compile.files").add(profile.getSteps().size());
+        metrics.counter("compile.bytesIn").add(profile.getBytesIn());
+        metrics.counter("compile.bytesOut").add(profile.getBytesOut());
+        metrics.counter("compile.cacheHits").add(profile.getCacheHits());
+        metrics.histogram("compile.nanos").record(profile.getWallNanos());
+        Histogram stepLatency = metrics.histogram("compile.step.nanos");
+        for (StepProfile step : profile.getSteps()) {
+            stepLatency.record(step.getTotalNanos());
+        }
     }
 
     public ModPackage getModPack() {
@@ -302,5 +784,37 @@ public class SingleModCompiler implements ModCompiler {
         this.buildComputeResults = null;
     }
 
+    /**
+     * Accumulates the time spent in writes to the underlying stream, so that channel writes can be told apart from
+     * the deflate work that produces them.
+     */
+    private static class TimedOutputStream extends FilterOutputStream {
 
+        private long nanos;
+
+        TimedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            this.out.write(b);
+            this.nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            this.out.write(b, off, len);
+            this.nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long start = System.nanoTime();
+            this.out.flush();
+            this.nanos += System.nanoTime() - start;
+        }
+    }
 }
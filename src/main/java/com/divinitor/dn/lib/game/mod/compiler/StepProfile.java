@@ -0,0 +1,156 @@
+package com.divinitor.dn.lib.game.mod.compiler;
+
+import lombok.Getter;
+
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timings and sizes recorded for a single {@link ModCompiler.FileBuildStep} while it was compiled.
+ *
+ * Times are in nanoseconds. Fetch time is the time spent producing the step's data, whether that ran on the
+ * writing thread or in the background, and wait time is how long the writer then blocked on a background result.
+ * The total only counts time on the writing thread, so a background step's fetch time, which overlapped other
+ * work, is left out of it.
+ */
+@Getter
+public class StepProfile {
+
+    private static final ThreadLocal<StepProfile> CURRENT = new ThreadLocal<>();
+
+    private final String destination;
+    private final String modId;
+    private volatile long fetchNanos;
+    private long waitNanos;
+    private long hashNanos;
+    private long deflateNanos;
+    private long writeNanos;
+    private long bytesIn;
+    private long bytesOut;
+    private boolean prebuilt;
+    private boolean background;
+    private int cacheHits;
+    private int cacheMisses;
+
+    public StepProfile(String destination, String modId) {
+        this.destination = destination;
+        this.modId = modId;
+    }
+
+    /**
+     * Records an asset cache lookup against the step currently being fetched on this thread, if any.
+     */
+    public static void recordCacheLookup(boolean hit) {
+        StepProfile profile = CURRENT.get();
+        if (profile != null) {
+            synchronized (profile) {
+                if (hit) {
+                    ++profile.cacheHits;
+                } else {
+                    ++profile.cacheMisses;
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a step's source, timing it and attributing any cache lookups it makes to this step.
+     */
+    byte[] fetch(ModCompiler.FileBuildStep step) throws Exception {
+        StepProfile previous = CURRENT.get();
+        CURRENT.set(this);
+        long start = System.nanoTime();
+        try {
+            return step.getSource().get();
+        } finally {
+            this.fetchNanos = System.nanoTime() - start;
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Runs a step's stream source into the given channel, timing it and attributing cache lookups like
+     * {@link #fetch(ModCompiler.FileBuildStep)}.
+     */
+    void stream(ModCompiler.FileBuildStep step, FileChannel target) throws Exception {
+        StepProfile previous = CURRENT.get();
+        CURRENT.set(this);
+        long start = System.nanoTime();
+        try {
+            step.getStreamSource().accept(target);
+        } finally {
+            this.fetchNanos = System.nanoTime() - start;
+            CURRENT.set(previous);
+        }
+    }
+
+    void setWaitNanos(long waitNanos) {
+        this.waitNanos = waitNanos;
+    }
+
+    void setHashNanos(long hashNanos) {
+        this.hashNanos = hashNanos;
+    }
+
+    void setDeflateNanos(long deflateNanos) {
+        this.deflateNanos = deflateNanos;
+    }
+
+    void setWriteNanos(long writeNanos) {
+        this.writeNanos = writeNanos;
+    }
+
+    void setBytesIn(long bytesIn) {
+        this.bytesIn = bytesIn;
+    }
+
+    void setBytesOut(long bytesOut) {
+        this.bytesOut = bytesOut;
+    }
+
+    void setPrebuilt(boolean prebuilt) {
+        this.prebuilt = prebuilt;
+    }
+
+    void setBackground(boolean background) {
+        this.background = background;
+    }
+
+    /**
+     * @return The time the step took on the writing thread: its fetch, or its wait if it was fetched in the
+     * background, plus hashing, deflating and writing
+     */
+    public long getTotalNanos() {
+        return (this.background ? this.waitNanos : this.fetchNanos) + this.hashNanos + this.deflateNanos +
+            this.writeNanos;
+    }
+
+    /**
+     * @return Compressed size over uncompressed size, or 1 if the step produced no data
+     */
+    public double getCompressionRatio() {
+        return this.bytesIn == 0 ? 1D : (double) this.bytesOut / this.bytesIn;
+    }
+
+    /**
+     * @return Whether the step's data came entirely from a cache or a prebuilt archive
+     */
+    public synchronized boolean isCacheHit() {
+        return this.prebuilt || (this.cacheHits > 0 && this.cacheMisses == 0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%s): %.2f ms [fetch %.2f, wait %.2f, hash %.2f, deflate %.2f, write %.2f], " +
+                "%d -> %d bytes (%.1f%%)%s%s",
+            this.destination, this.modId,
+            millis(this.getTotalNanos()), millis(this.fetchNanos), millis(this.waitNanos), millis(this.hashNanos),
+            millis(this.deflateNanos), millis(this.writeNanos),
+            this.bytesIn, this.bytesOut, this.getCompressionRatio() * 100D,
+            this.isCacheHit() ? ", cached" : "", this.background ? ", background" : "");
+    }
+
+    static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
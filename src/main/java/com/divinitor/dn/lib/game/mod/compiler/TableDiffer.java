@@ -0,0 +1,231 @@
+package com.divinitor.dn.lib.game.mod.compiler;
+
+import co.phoenixlab.dn.subfile.dnt.DntColumn;
+import co.phoenixlab.dn.subfile.dnt.DntReader;
+import com.divinitor.dn.lib.game.mod.DnAssetAccessService;
+import com.divinitor.dn.lib.game.mod.definition.TableEditDirective;
+import com.divinitor.dn.lib.game.mod.definition.TableRow;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import net.openhft.hashing.LongHashFunction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Generates the minimal {@link TableEditDirective} that transforms a game table into a modified copy of it.
+ *
+ * Rows are matched with a merge-join on their sorted row IDs, and matching rows are compared by xxHash fingerprint
+ * first so that only rows that actually changed are decoded. Modifications only carry the columns that differ.
+ */
+public class TableDiffer {
+
+    private static final LongHashFunction XX = LongHashFunction.xx();
+
+    private final DnAssetAccessService assetAccessService;
+
+    public TableDiffer(DnAssetAccessService assetAccessService) {
+        this.assetAccessService = assetAccessService;
+    }
+
+    public TableEditDirective diff(String tableName, Path modifiedTable) throws IOException {
+        return this.diff(tableName, Files.readAllBytes(modifiedTable));
+    }
+
+    public TableEditDirective diff(String tableName, byte[] modifiedTable) throws IOException {
+        byte[] originalTable = this.assetAccessService.getAsset(tableName);
+        TableEditDirective directive = diff(originalTable, modifiedTable);
+        directive.setTableName(tableName);
+        return directive;
+    }
+
+    public static TableEditDirective diff(byte[] originalTable, byte[] modifiedTable) throws IOException {
+        DntReader reader = new DntReader();
+        DntReader.DntHandle original = reader.read(ByteBuffer.wrap(originalTable));
+        DntReader.DntHandle modified = reader.read(ByteBuffer.wrap(modifiedTable));
+
+        DntColumn[] columns = original.getDnt().getColumns();
+        checkLayout(columns, modified.getDnt().getColumns());
+        int[] widths = TableEditor.columnWidths(columns);
+
+        byte[] originalData = original.getDnt().getData();
+        byte[] modifiedData = modified.getDnt().getData();
+        long[] originalRows = sortedRows(original);
+        long[] modifiedRows = sortedRows(modified);
+
+        List<TableRow> add = new ArrayList<>();
+        List<TableRow> modify = new ArrayList<>();
+        TIntList delete = new TIntArrayList();
+
+        int i = 0;
+        int j = 0;
+        while (i < originalRows.length || j < modifiedRows.length) {
+            if (j >= modifiedRows.length
+                || (i < originalRows.length && rowId(originalRows[i]) < rowId(modifiedRows[j]))) {
+                //  Only in the original
+                delete.add(rowId(originalRows[i]));
+                ++i;
+            } else if (i >= originalRows.length || rowId(originalRows[i]) > rowId(modifiedRows[j])) {
+                //  Only in the modified table
+                add.add(readRow(modifiedData, rowOffset(modifiedRows[j]), columns));
+                ++j;
+            } else {
+                //  In both, compare fingerprints before looking at columns
+                int originalOffset = rowOffset(originalRows[i]);
+                int modifiedOffset = rowOffset(modifiedRows[j]);
+                int originalLength = TableEditor.rowLength(originalData, originalOffset, widths);
+                int modifiedLength = TableEditor.rowLength(modifiedData, modifiedOffset, widths);
+                if (originalLength != modifiedLength
+                    || XX.hashBytes(originalData, originalOffset, originalLength)
+                    != XX.hashBytes(modifiedData, modifiedOffset, modifiedLength)) {
+                    TableRow row = diffRow(originalData, originalOffset, modifiedData, modifiedOffset, columns);
+                    if (!row.getColumns().isEmpty()) {
+                        modify.add(row);
+                    }
+                }
+
+                ++i;
+                ++j;
+            }
+        }
+
+        TableEditDirective directive = new TableEditDirective();
+        directive.setAdd(add.toArray(new TableRow[add.size()]));
+        directive.setModify(modify.toArray(new TableRow[modify.size()]));
+        directive.setDelete(delete.toArray());
+        return directive;
+    }
+
+    private static void checkLayout(DntColumn[] original, DntColumn[] modified) {
+        if (original.length != modified.length) {
+            throw new IllegalArgumentException("Modified table has " + modified.length
+                + " columns, expected " + original.length);
+        }
+
+        for (int i = 0; i < original.length; i++) {
+            if (!original[i].getName().equals(modified[i].getName())
+                || original[i].getDataType() != modified[i].getDataType()) {
+                throw new IllegalArgumentException("Modified table column " + modified[i].getName()
+                    + " does not match original column " + original[i].getName());
+            }
+        }
+    }
+
+    /**
+     * Packs each row's ID and offset into a long and sorts them, giving a compact row ID ordered view of the table.
+     */
+    private static long[] sortedRows(DntReader.DntHandle handle) {
+        long[] ret = new long[1024];
+        int count = 0;
+        for (DntReader.DntHandle.RowReader rr : handle) {
+            int rowId = rr.getRowId();
+            if (count == ret.length) {
+                ret = Arrays.copyOf(ret, count * 2);
+            }
+
+            ret[count++] = ((long) rowId << 32) | (handle.getRowOffset(rowId) & 0xFFFFFFFFL);
+        }
+
+        ret = Arrays.copyOf(ret, count);
+        Arrays.sort(ret);
+        return ret;
+    }
+
+    private static int rowId(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    private static int rowOffset(long packed) {
+        return (int) packed;
+    }
+
+    private static TableRow readRow(byte[] data, int offset, DntColumn[] columns) {
+        TableRow row = new TableRow();
+        row.setRowId(readInt(data, offset));
+        Map<String, Object> values = new LinkedHashMap<>();
+        int pos = offset + 4;
+        for (DntColumn column : columns) {
+            values.put(column.getName(), readValue(data, pos, column));
+            pos += valueLength(data, pos, column);
+        }
+
+        row.setColumns(values);
+        return row;
+    }
+
+    private static TableRow diffRow(byte[] originalData, int originalOffset,
+                                    byte[] modifiedData, int modifiedOffset,
+                                    DntColumn[] columns) {
+        TableRow row = new TableRow();
+        row.setRowId(readInt(modifiedData, modifiedOffset));
+        Map<String, Object> values = new LinkedHashMap<>();
+        int a = originalOffset + 4;
+        int b = modifiedOffset + 4;
+        for (DntColumn column : columns) {
+            int aLen = valueLength(originalData, a, column);
+            int bLen = valueLength(modifiedData, b, column);
+            if (!rangeEquals(originalData, a, aLen, modifiedData, b, bLen)) {
+                values.put(column.getName(), readValue(modifiedData, b, column));
+            }
+
+            a += aLen;
+            b += bLen;
+        }
+
+        row.setColumns(values);
+        return row;
+    }
+
+    private static boolean rangeEquals(byte[] a, int aOffset, int aLen, byte[] b, int bOffset, int bLen) {
+        if (aLen != bLen) {
+            return false;
+        }
+
+        for (int i = 0; i < aLen; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int valueLength(byte[] data, int offset, DntColumn column) {
+        if (column.getDataType() == DntColumn.DataType.TEXT) {
+            return 2 + readShort(data, offset);
+        }
+
+        return 4;
+    }
+
+    private static Object readValue(byte[] data, int offset, DntColumn column) {
+        switch (column.getDataType()) {
+            case BOOLEAN:
+                return readInt(data, offset) != 0;
+            case TEXT:
+                return new String(data, offset + 2, readShort(data, offset), StandardCharsets.UTF_8);
+            case FLOAT:
+            case DOUBLE:
+                return Float.intBitsToFloat(readInt(data, offset));
+            case INTEGER:
+                return readInt(data, offset);
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
+    private static int readShort(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF)
+            | ((data[offset + 1] & 0xFF) << 8)
+            | ((data[offset + 2] & 0xFF) << 16)
+            | ((data[offset + 3] & 0xFF) << 24);
+    }
+}
@@ -0,0 +1,253 @@
+package com.divinitor.dn.lib.game.mod.compiler;
+
+import com.divinitor.dn.lib.game.mod.definition.ModPackage;
+import com.divinitor.dn.lib.game.mod.definition.TableEditDirective;
+import com.divinitor.dn.lib.game.mod.definition.TableRow;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.MultimapBuilder;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import lombok.Getter;
+
+import java.util.*;
+
+/**
+ * Merges the {@link TableEditDirective}s of several mods that target the same table into a single directive, so
+ * that the table only has to be parsed and serialized once.
+ *
+ * Directives must be added in mod order. A mod's own edits apply in order, so a later directive from the same mod
+ * overrides what its earlier ones did to a row or column, and a mod that deletes a row and then adds it back
+ * replaces the row. A mod that modifies a row it deleted is recorded as a {@link BuildReject}. Between mods, the
+ * first mod to touch a row or column wins, and any later mod that tries to change the same row or column is
+ * recorded as a {@link BuildConflict}.
+ */
+public class TableEditMerger {
+
+    @Getter
+    private final String tableName;
+
+    @Getter
+    private ModPackage firstMod;
+
+    private final TIntObjectMap<RowEdit> rows;
+
+    /**
+     * Row IDs in the order they were first seen, to keep the merged directive stable.
+     */
+    private final TIntList rowOrder;
+
+    /**
+     * Conflicting mod IDs keyed by the row or column they conflict on. The first mod is the one that wins.
+     */
+    private final Map<String, Set<String>> conflicts;
+
+    /**
+     * Edits that can't be applied, keyed by mod ID.
+     */
+    private final ListMultimap<String, BuildReject> rejects;
+
+    private Integer compressionLevel;
+
+    public TableEditMerger(String tableName) {
+        this.tableName = tableName;
+        this.rows = new TIntObjectHashMap<>();
+        this.rowOrder = new TIntArrayList();
+        this.conflicts = new LinkedHashMap<>();
+        this.rejects = MultimapBuilder.linkedHashKeys().arrayListValues().build();
+    }
+
+    public void add(ModPackage modPack, TableEditDirective directive) {
+        if (this.firstMod == null) {
+            this.firstMod = modPack;
+        }
+
+        if (this.compressionLevel == null) {
+            this.compressionLevel = directive.getCompressionLevel();
+        }
+
+        String modId = modPack.getId();
+
+        if (directive.getDelete() != null) {
+            for (int rowId : directive.getDelete()) {
+                this.claimRow(modId, rowId, EditKind.DELETE);
+            }
+        }
+
+        if (directive.getAdd() != null) {
+            for (TableRow row : directive.getAdd()) {
+                RowEdit edit = this.claimRow(modId, row.getRowId(), EditKind.ADD);
+                if (edit != null) {
+                    this.mergeColumns(modId, edit, row);
+                }
+            }
+        }
+
+        if (directive.getModify() != null) {
+            for (TableRow row : directive.getModify()) {
+                RowEdit edit = this.rows.get(row.getRowId());
+                if (edit == null) {
+                    edit = this.claimRow(modId, row.getRowId(), EditKind.MODIFY);
+                } else if (edit.kind == EditKind.DELETE) {
+                    if (edit.modId.equals(modId)) {
+                        this.rejects.put(modId, BuildReject.builder()
+                            .path(this.rowKey(row.getRowId()))
+                            .reason("Modifies a row the mod deletes")
+                            .build());
+                    } else {
+                        this.conflict(this.rowKey(row.getRowId()), edit.modId, modId);
+                    }
+
+                    continue;
+                }
+
+                this.mergeColumns(modId, edit, row);
+            }
+        }
+    }
+
+    /**
+     * Claims a row for the given mod. If the mod already claimed the row, the new edit replaces its earlier one, and
+     * an add following the mod's own delete or modify of the row replaces the original row.
+     *
+     * @return The row's edit state, or null if an earlier mod already decided the row's fate.
+     */
+    private RowEdit claimRow(String modId, int rowId, EditKind kind) {
+        RowEdit edit = this.rows.get(rowId);
+        if (edit == null) {
+            edit = new RowEdit(modId, kind);
+            this.rows.put(rowId, edit);
+            this.rowOrder.add(rowId);
+            return edit;
+        }
+
+        if (edit.modId.equals(modId)) {
+            //  Mods are added in order, so nothing from a later mod has been merged into the row yet
+            if (kind == EditKind.ADD && edit.kind != EditKind.ADD) {
+                kind = EditKind.REPLACE;
+            }
+
+            edit = new RowEdit(modId, kind);
+            this.rows.put(rowId, edit);
+            return edit;
+        }
+
+        this.conflict(this.rowKey(rowId), edit.modId, modId);
+        return null;
+    }
+
+    private void mergeColumns(String modId, RowEdit edit, TableRow row) {
+        if (row.getColumns() == null) {
+            return;
+        }
+
+        row.getColumns().forEach((column, value) -> {
+            String owner = edit.columnOwners.get(column);
+            if (owner == null || owner.equals(modId)) {
+                //  Unclaimed, or a later edit by the same mod, which replaces its earlier value
+                edit.columnOwners.put(column, modId);
+                edit.columns.put(column, value);
+            } else {
+                this.conflict(this.rowKey(row.getRowId()) + "." + column, owner, modId);
+            }
+        });
+    }
+
+    private String rowKey(int rowId) {
+        return this.tableName + "#" + rowId;
+    }
+
+    private void conflict(String key, String winner, String loser) {
+        if (winner.equals(loser)) {
+            return;
+        }
+
+        Set<String> mods = this.conflicts.computeIfAbsent(key, k -> new LinkedHashSet<>());
+        mods.add(winner);
+        mods.add(loser);
+    }
+
+    /**
+     * Builds the merged directive from everything added so far.
+     */
+    public TableEditDirective merge() {
+        List<TableRow> add = new ArrayList<>();
+        List<TableRow> modify = new ArrayList<>();
+        TIntList delete = new TIntArrayList();
+
+        for (int i = 0; i < this.rowOrder.size(); i++) {
+            int rowId = this.rowOrder.get(i);
+            RowEdit edit = this.rows.get(rowId);
+            switch (edit.kind) {
+                case ADD:
+                    add.add(edit.toRow(rowId));
+                    break;
+                case MODIFY:
+                    modify.add(edit.toRow(rowId));
+                    break;
+                case REPLACE:
+                    //  TableEditor drops the original row and inserts the new one in its place
+                    delete.add(rowId);
+                    add.add(edit.toRow(rowId));
+                    break;
+                case DELETE:
+                    delete.add(rowId);
+                    break;
+            }
+        }
+
+        TableEditDirective ret = new TableEditDirective();
+        ret.setTableName(this.tableName);
+        ret.setAdd(add.toArray(new TableRow[add.size()]));
+        ret.setModify(modify.toArray(new TableRow[modify.size()]));
+        ret.setDelete(delete.toArray());
+        ret.setCompressionLevel(this.compressionLevel);
+        return ret;
+    }
+
+    public List<BuildConflict> getConflicts() {
+        List<BuildConflict> ret = new ArrayList<>(this.conflicts.size());
+        this.conflicts.forEach((key, mods) -> ret.add(BuildConflict.builder()
+            .file(key)
+            .conflictingModIds(new LinkedHashSet<>(mods))
+            .build()));
+        return ret;
+    }
+
+    /**
+     * @return Edits that can't be applied, keyed by mod ID
+     */
+    public ListMultimap<String, BuildReject> getRejects() {
+        return this.rejects;
+    }
+
+    private enum EditKind {
+        ADD,
+        MODIFY,
+        DELETE,
+        /**
+         * Delete of the original row, then an add with the same ID.
+         */
+        REPLACE
+    }
+
+    private static class RowEdit {
+        final String modId;
+        final EditKind kind;
+        final Map<String, Object> columns = new LinkedHashMap<>();
+        final Map<String, String> columnOwners = new HashMap<>();
+
+        RowEdit(String modId, EditKind kind) {
+            this.modId = modId;
+            this.kind = kind;
+        }
+
+        TableRow toRow(int rowId) {
+            TableRow row = new TableRow();
+            row.setRowId(rowId);
+            row.setColumns(new LinkedHashMap<>(this.columns));
+            return row;
+        }
+    }
+}
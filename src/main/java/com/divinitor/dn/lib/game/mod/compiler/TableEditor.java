@@ -8,19 +8,36 @@ import com.divinitor.dn.lib.game.mod.DnAssetAccessService;
 import com.divinitor.dn.lib.game.mod.definition.TableEditDirective;
 import com.divinitor.dn.lib.game.mod.definition.TableRow;
 import com.divinitor.dn.lib.game.mod.util.Utils;
+import com.google.common.io.LittleEndianDataInputStream;
 import gnu.trove.map.TIntObjectMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.set.TIntSet;
 import gnu.trove.set.hash.TIntHashSet;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
 
+import static java.nio.file.StandardOpenOption.*;
+
 public class TableEditor {
 
+    /**
+     * Offset of the row count in the DNT header (after the magic number and column count).
+     */
+    private static final int ROW_COUNT_OFFSET = 4 + 2;
+
+    /**
+     * Size of the input and output buffers used when streaming a table.
+     */
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
     private final DnAssetAccessService assetAccessService;
 
     public TableEditor(DnAssetAccessService assetAccessService) {
@@ -33,6 +50,14 @@ public class TableEditor {
         return () -> this.compileTable(tableName, directive);
     }
 
+    /**
+     * @return A step stream source that writes the edited table with {@link #streamTable(String,
+     * TableEditDirective, SeekableByteChannel)}
+     */
+    public Utils.ThrowingConsumer<FileChannel> tableStream(String tableName, TableEditDirective directive) {
+        return out -> this.streamTable(tableName, directive, out);
+    }
+
     public byte[] compileTable(String tableName, TableEditDirective directive) throws IOException {
         byte[] tableBytes = this.assetAccessService.getAsset(tableName);
         DntReader reader = new DntReader();
@@ -65,43 +90,171 @@ public class TableEditor {
         return out.toByteArray();
     }
 
-    private BodyResult buildBody(DntReader.DntHandle handle, TableEditDirective directive) throws IOException {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    /**
+     * Streams the edited table into the given channel, starting at the channel's current position. Rows are read
+     * from the asset stream and written out one at a time, so memory use does not depend on the size of the table.
+     * The row count in the header is patched once all rows have been written.
+     *
+     * @return The number of bytes written.
+     */
+    public long streamTable(String tableName, TableEditDirective directive, SeekableByteChannel out)
+            throws IOException {
+        long start = out.position();
+        int numRows;
+        try (InputStream in = this.assetAccessService.openAsset(tableName)) {
+            //  DO NOT CLOSE THIS STREAM, it would close the channel
+            OutputStream os = new BufferedOutputStream(Channels.newOutputStream(out), STREAM_BUFFER_SIZE);
+            numRows = this.streamBody(in, directive, os);
+            os.flush();
+        }
+
+        long end = out.position();
+        ByteBuffer rowCount = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        rowCount.putInt(numRows);
+        rowCount.flip();
+        out.position(start + ROW_COUNT_OFFSET);
+        while (rowCount.hasRemaining()) {
+            out.write(rowCount);
+        }
+
+        out.position(end);
+        return end - start;
+    }
 
-        TableRow[] add = directive.getAdd();
-        if (add == null) {
-            add = new TableRow[0];
+    public long streamTable(String tableName, TableEditDirective directive, Path target) throws IOException {
+        try (FileChannel channel = FileChannel.open(target, WRITE, CREATE, TRUNCATE_EXISTING)) {
+            return this.streamTable(tableName, directive, channel);
         }
+    }
+
+    private int streamBody(InputStream in, TableEditDirective directive, OutputStream out) throws IOException {
+        LittleEndianDataInputStream din = new LittleEndianDataInputStream(
+            new BufferedInputStream(in, STREAM_BUFFER_SIZE));
+        LittleEndianDataOutputStream dout = new LittleEndianDataOutputStream(out);
+
+        //  Header, with a placeholder row count
+        int magicNumber = din.readInt();
+        int numColumns = din.readUnsignedShort();
+        int numRows = din.readInt();
+        dout.writeInt(magicNumber);
+        dout.writeShort(numColumns);
+        dout.writeInt(0);
+
+        String[] names = new String[numColumns];
+        DntColumn.DataType[] types = new DntColumn.DataType[numColumns];
+        for (int i = 0; i < numColumns; i++) {
+            byte[] nameBytes = new byte[din.readUnsignedShort()];
+            din.readFully(nameBytes);
+            int typeId = din.readUnsignedByte();
+            names[i] = new String(nameBytes, StandardCharsets.UTF_8);
+            types[i] = dataType(typeId);
+            dout.writeShort(nameBytes.length);
+            dout.write(nameBytes);
+            dout.write(typeId);
+        }
+
+        EditSet edits = new EditSet(directive);
+        RowBuffer row = new RowBuffer();
+        int rows = 0;
+        for (int r = 0; r < numRows; r++) {
+            row.read(din, types);
+            int thisRowId = row.rowId();
 
-        Arrays.sort(add, Comparator.comparingInt(TableRow::getRowId));
+            //  Insert new
+            while (!edits.additions.isEmpty() && edits.additions.peek().getRowId() < thisRowId) {
+                dout.write(this.insertion(names, types, edits.additions.poll()));
+                ++rows;
+            }
+
+            //  Delete
+            if (edits.delete.contains(thisRowId)) {
+                continue;
+            }
 
-        Queue<TableRow> additions = new ArrayDeque<>(add.length);
-        additions.addAll(Arrays.asList(add));
+            //  Edit
+            TableRow mod = edits.mod.get(thisRowId);
+            if (mod != null) {
+                this.modifyRow(dout, names, types, mod, row);
+            } else {
+                dout.write(row.data, 0, row.length);
+            }
 
-        TIntObjectMap<TableRow> mod = new TIntObjectHashMap<>();
-        TableRow[] modify = directive.getModify();
-        if (modify == null) {
-            modify = new TableRow[0];
+            ++rows;
         }
 
-        for (TableRow modRow : modify) {
-            mod.put(modRow.getRowId(), modRow);
+        //  Tail entries
+        while (!edits.additions.isEmpty()) {
+            dout.write(this.insertion(names, types, edits.additions.poll()));
+            ++rows;
         }
 
-        TIntSet delete = new TIntHashSet();
+        dout.write(5);
+        dout.write("THEND".getBytes(StandardCharsets.UTF_8));
+        dout.flush();
+
+        return rows;
+    }
+
+    private void modifyRow(LittleEndianDataOutputStream dout, String[] names, DntColumn.DataType[] types,
+                           TableRow mod, RowBuffer row) throws IOException {
+        dout.writeInt(mod.getRowId());
+
+        Map<String, Object> columns = mod.getColumns();
+        int pos = 4;
+        for (int i = 0; i < names.length; i++) {
+            int width = row.columnLength(pos, types[i]);
+            Object val = columns.get(names[i]);
+            if (val == null) {
+                //  Unchanged, copy the original column bytes
+                dout.write(row.data, pos, width);
+            } else {
+                switch (types[i]) {
+                    case BOOLEAN:
+                        dout.writeInt(parseBool(val) ? 1 : 0);
+                        break;
+                    case TEXT:
+                        this.writeDntString(dout, String.valueOf(val));
+                        break;
+                    case FLOAT:
+                    case DOUBLE:
+                        dout.writeFloat(parseFloat(val));
+                        break;
+                    case INTEGER:
+                        dout.writeInt(parseInt(val));
+                        break;
+                    default:
+                        throw new IllegalArgumentException();
+                }
+            }
 
-        int[] deleteIds = directive.getDelete();
-        if (deleteIds != null) {
-            delete.addAll(deleteIds);
+            pos += width;
         }
+    }
+
+    private static DntColumn.DataType dataType(int id) throws IOException {
+        for (DntColumn.DataType type : DntColumn.DataType.values()) {
+            if (type.getId() == id) {
+                return type;
+            }
+        }
+
+        throw new IOException("Unknown DNT column type " + id);
+    }
+
+    private BodyResult buildBody(DntReader.DntHandle handle, TableEditDirective directive) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        EditSet edits = new EditSet(directive);
+        Queue<TableRow> additions = edits.additions;
+        TIntObjectMap<TableRow> mod = edits.mod;
+        TIntSet delete = edits.delete;
 
         int rows = 0;
         Dnt dnt = handle.getDnt();
         byte[] data = dnt.getData();
-        int widths[] = new int[dnt.getNumColumns()];
-        for (int i = 0; i < dnt.getColumns().length; i++) {
-            widths[i] = dnt.getColumns()[i].getDataType() == DntColumn.DataType.TEXT ? 0 : 4;
-        }
+        int[] widths = columnWidths(dnt.getColumns());
+        String[] names = columnNames(dnt.getColumns());
+        DntColumn.DataType[] types = columnTypes(dnt.getColumns());
 
         for (DntReader.DntHandle.RowReader rr : handle) {
             int thisRowId = rr.getRowId();
@@ -109,7 +262,7 @@ public class TableEditor {
             //  Insert new
             while (!additions.isEmpty() && additions.peek().getRowId() < thisRowId) {
                 //  Insert
-                outputStream.write(this.insertion(handle, additions.poll()));
+                outputStream.write(this.insertion(names, types, additions.poll()));
                 ++rows;
             }
 
@@ -124,22 +277,8 @@ public class TableEditor {
                 outputStream.write(this.modify(handle, mod.get(thisRowId), rr));
             } else {
                 //  Copy
-                int startPos, offset;
-                startPos = offset = handle.getRowOffset(thisRowId);
-                offset += 4;
-                for (int width : widths) {
-                    if (width == 0) {
-                        int addL = data[offset] & 0xFF;
-                        addL |= (data[offset + 1] << 8) & 0xFF00;
-                        offset += addL;
-                        offset += 2;
-                    } else {
-                        offset += width;
-                    }
-                }
-
-                int width = offset - startPos;
-                outputStream.write(data, startPos, width);
+                int startPos = handle.getRowOffset(thisRowId);
+                outputStream.write(data, startPos, rowLength(data, startPos, widths));
             }
 
             ++rows;
@@ -148,7 +287,7 @@ public class TableEditor {
         //  Tail entries
         while (!additions.isEmpty()) {
             //  Insert
-            outputStream.write(this.insertion(handle, additions.poll()));
+            outputStream.write(this.insertion(names, types, additions.poll()));
             ++rows;
         }
 
@@ -158,17 +297,66 @@ public class TableEditor {
         return ret;
     }
 
-    private byte[] insertion(DntReader.DntHandle handle, TableRow row) throws IOException {
+    /**
+     * Computes the fixed width of each column, or 0 for variable width (TEXT) columns.
+     */
+    static int[] columnWidths(DntColumn[] columns) {
+        int[] widths = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            widths[i] = columns[i].getDataType() == DntColumn.DataType.TEXT ? 0 : 4;
+        }
+
+        return widths;
+    }
+
+    /**
+     * Computes the length in bytes of the row starting at offset, including its row ID.
+     */
+    static int rowLength(byte[] data, int offset, int[] widths) {
+        int pos = offset + 4;
+        for (int width : widths) {
+            if (width == 0) {
+                int len = data[pos] & 0xFF;
+                len |= (data[pos + 1] << 8) & 0xFF00;
+                pos += len;
+                pos += 2;
+            } else {
+                pos += width;
+            }
+        }
+
+        return pos - offset;
+    }
+
+    static String[] columnNames(DntColumn[] columns) {
+        String[] names = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            names[i] = columns[i].getName();
+        }
+
+        return names;
+    }
+
+    static DntColumn.DataType[] columnTypes(DntColumn[] columns) {
+        DntColumn.DataType[] types = new DntColumn.DataType[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            types[i] = columns[i].getDataType();
+        }
+
+        return types;
+    }
+
+    private byte[] insertion(String[] names, DntColumn.DataType[] types, TableRow row) throws IOException {
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         LittleEndianDataOutputStream dout = new LittleEndianDataOutputStream(outputStream);
 
         dout.writeInt(row.getRowId());
 
         Map<String, Object> columns = row.getColumns();
-        for (DntColumn dntColumn : handle.getDnt().getColumns()) {
-            Object val = columns.get(dntColumn.getName());
+        for (int i = 0; i < names.length; i++) {
+            Object val = columns.get(names[i]);
 
-            switch (dntColumn.getDataType()) {
+            switch (types[i]) {
                 case BOOLEAN: {
                     boolean value = parseBool(val);
                     dout.writeInt(value ? 1 : 0);
@@ -316,6 +504,80 @@ public class TableEditor {
         return 0;
     }
 
+    /**
+     * The additions, modifications and deletions of a directive, arranged for a single pass over the table.
+     */
+    private static class EditSet {
+        final Queue<TableRow> additions;
+        final TIntObjectMap<TableRow> mod;
+        final TIntSet delete;
+
+        EditSet(TableEditDirective directive) {
+            TableRow[] add = directive.getAdd();
+            if (add == null) {
+                add = new TableRow[0];
+            }
+
+            TableRow[] sorted = add.clone();
+            Arrays.sort(sorted, Comparator.comparingInt(TableRow::getRowId));
+            additions = new ArrayDeque<>(Arrays.asList(sorted));
+
+            mod = new TIntObjectHashMap<>();
+            if (directive.getModify() != null) {
+                for (TableRow modRow : directive.getModify()) {
+                    mod.put(modRow.getRowId(), modRow);
+                }
+            }
+
+            delete = new TIntHashSet();
+            if (directive.getDelete() != null) {
+                delete.addAll(directive.getDelete());
+            }
+        }
+    }
+
+    /**
+     * Reusable buffer holding the raw bytes of the current row while streaming. Only grows if a row does not fit.
+     */
+    private static class RowBuffer {
+        byte[] data = new byte[4096];
+        int length;
+
+        void read(LittleEndianDataInputStream din, DntColumn.DataType[] types) throws IOException {
+            length = 0;
+            readBytes(din, 4);
+            for (DntColumn.DataType type : types) {
+                if (type == DntColumn.DataType.TEXT) {
+                    readBytes(din, 2);
+                    readBytes(din, columnLength(length - 2, type) - 2);
+                } else {
+                    readBytes(din, 4);
+                }
+            }
+        }
+
+        private void readBytes(LittleEndianDataInputStream din, int count) throws IOException {
+            if (length + count > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + count));
+            }
+
+            din.readFully(data, length, count);
+            length += count;
+        }
+
+        int rowId() {
+            return (data[0] & 0xFF) | ((data[1] & 0xFF) << 8) | ((data[2] & 0xFF) << 16) | ((data[3] & 0xFF) << 24);
+        }
+
+        int columnLength(int pos, DntColumn.DataType type) {
+            if (type == DntColumn.DataType.TEXT) {
+                return 2 + ((data[pos] & 0xFF) | ((data[pos + 1] & 0xFF) << 8));
+            }
+
+            return 4;
+        }
+    }
+
     static class BodyResult {
         byte[] data;
         int numRows;
@@ -0,0 +1,163 @@
+package com.divinitor.dn.lib.game.mod.compiler.processors;
+
+import com.divinitor.dn.lib.game.mod.ModKit;
+import com.divinitor.dn.lib.game.mod.compiler.StepProfile;
+import com.divinitor.dn.lib.game.mod.definition.ModPackage;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import net.openhft.hashing.LongHashFunction;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent cache of compiled actkits, keyed on a fingerprint of the actkit source directory.
+ *
+ * The fingerprint covers every file's relative path, size and xxHash. A manifest of the last fingerprinted state
+ * is kept per source directory, and files whose size and modification time have not changed reuse their previous
+ * hash instead of being read again. Each source directory has a single compiled output, which is replaced when
+ * the fingerprint changes, and its manifest records the fingerprint it was compiled from.
+ */
+public class ActKitBuildCache {
+
+    private static final LongHashFunction XX = LongHashFunction.xx();
+    private static final Gson GSON = new GsonBuilder().create();
+    private static final String OUTPUT_SUFFIX = ".act";
+    private static final String MANIFEST_SUFFIX = ".json";
+
+    private final Path cacheDir;
+    private volatile boolean pruned;
+
+    public ActKitBuildCache(Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Gets the compiled act file for an actkit source directory, compiling it only if the sources have changed
+     * since it was last compiled.
+     */
+    public byte[] get(ModPackage modPack, String src, Path baseDir) throws IOException {
+        Files.createDirectories(this.cacheDir);
+        this.pruneOnce();
+        String sourceKey = Long.toHexString(XX.hashChars(modPack.getId() + ":" + src));
+        Path manifestFile = this.cacheDir.resolve(sourceKey + MANIFEST_SUFFIX);
+        Path output = this.cacheDir.resolve(sourceKey + OUTPUT_SUFFIX);
+
+        Manifest previous = this.readManifest(manifestFile);
+        Manifest current = this.fingerprint(baseDir, previous);
+        boolean hit = previous != null && previous.fingerprint == current.fingerprint && Files.isRegularFile(output);
+        StepProfile.recordCacheLookup(hit);
+        if (hit) {
+            return Files.readAllBytes(output);
+        }
+
+        //  Drop the old manifest first, so a failure partway through can't pair it with the new output
+        byte[] data = ActKitProcessor.compile(modPack.getKit(), baseDir);
+        Files.deleteIfExists(manifestFile);
+        this.writeAtomically(output, data);
+        this.writeAtomically(manifestFile, GSON.toJson(current).getBytes(StandardCharsets.UTF_8));
+        return data;
+    }
+
+    /**
+     * Deletes outputs with no manifest, left by older versions that stored every compiled fingerprint.
+     */
+    private void pruneOnce() {
+        if (this.pruned) {
+            return;
+        }
+
+        this.pruned = true;
+        try (Stream<Path> list = Files.list(this.cacheDir)) {
+            for (Path file : (Iterable<Path>) list::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(OUTPUT_SUFFIX) && !Files.exists(this.cacheDir.resolve(
+                    name.substring(0, name.length() - OUTPUT_SUFFIX.length()) + MANIFEST_SUFFIX))) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            ModKit.LOGGER.warn("Unable to prune actkit cache " + this.cacheDir, e);
+        }
+    }
+
+    private Manifest fingerprint(Path baseDir, Manifest previous) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(baseDir)) {
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        Manifest ret = new Manifest();
+        ret.files = new TreeMap<>();
+        for (Path file : files) {
+            String relative = baseDir.relativize(file).toString().replace('\\', '/');
+            FileState state = new FileState();
+            state.size = Files.size(file);
+            state.modified = Files.getLastModifiedTime(file).toMillis();
+
+            FileState old = previous == null ? null : previous.files.get(relative);
+            if (old != null && old.size == state.size && old.modified == state.modified) {
+                //  Unchanged, reuse the hash
+                state.hash = old.hash;
+            } else {
+                state.hash = XX.hashBytes(Files.readAllBytes(file));
+            }
+
+            ret.files.put(relative, state);
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+        out.writeUTF(ModKit.KIT_VERSION.toString());
+        for (Map.Entry<String, FileState> entry : ret.files.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().size);
+            out.writeLong(entry.getValue().hash);
+        }
+
+        out.flush();
+        ret.fingerprint = XX.hashBytes(baos.toByteArray());
+        return ret;
+    }
+
+    private Manifest readManifest(Path manifestFile) {
+        if (!Files.isRegularFile(manifestFile)) {
+            return null;
+        }
+
+        try (Reader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+            Manifest manifest = GSON.fromJson(reader, Manifest.class);
+            return manifest == null || manifest.files == null ? null : manifest;
+        } catch (Exception e) {
+            //  Treat a broken manifest as missing
+            return null;
+        }
+    }
+
+    private void writeAtomically(Path target, byte[] data) throws IOException {
+        Path temp = Files.createTempFile(this.cacheDir, target.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, data);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static class Manifest {
+        long fingerprint;
+        Map<String, FileState> files;
+    }
+
+    private static class FileState {
+        long size;
+        long modified;
+        long hash;
+    }
+}
@@ -1,27 +1,79 @@
 package com.divinitor.dn.lib.game.mod.compiler.processors;
 
 import co.phoenixlab.dn.subfile.act.kit.ActKitCompiler;
+import com.divinitor.dn.lib.game.mod.ModKit;
 import com.divinitor.dn.lib.game.mod.definition.ModPackage;
 import com.divinitor.dn.lib.game.mod.util.Utils;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 public class ActKitProcessor implements Processor {
+
+    //  Compiles run in their own temp directory and cache writes are atomic, so actkits can build concurrently
+    private static final ProcessorHints HINTS = ProcessorHints.builder()
+        .workload(ProcessorHints.Workload.IO)
+        .parallelSafe(true)
+        .costPerByte(8)
+        .directorySource(true)
+        .build();
+
+    /**
+     * Build cache of each kit, kept for as long as the kit is.
+     */
+    private static final Map<ModKit, ActKitBuildCache> CACHES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    @Override
+    public String getName() {
+        return "actkit";
+    }
+
+    @Override
+    public ProcessorHints getHints() {
+        return HINTS;
+    }
+
     @Override
     public Utils.ThrowingSupplier<byte[]> process(ModPackage modPack, String src) {
         return () -> {
             //  src is a real relative path relative to the mod base dir
-            Path baseDir = modPack.getKit().resolveModPackagePath(modPack, src);
+            try (ModKit.ModPackagePath baseDir = modPack.getKit().resolveModPackagePath(modPack, src)) {
+                return cache(modPack.getKit()).get(modPack, src, baseDir.getPath());
+            }
+        };
+    }
+
+    private static ActKitBuildCache cache(ModKit kit) {
+        return CACHES.computeIfAbsent(kit, k -> new ActKitBuildCache(k.getRoot().resolve("modkit/cache/actkit")));
+    }
+
+    /**
+     * Compiles an actkit directory and returns the resulting act file.
+     *
+     * ActKitCompiler can only write to a path, so each compile gets its own temporary directory which is removed
+     * as soon as the output has been read back. Concurrent compiles of directories with the same name can't
+     * collide.
+     */
+    static byte[] compile(ModKit kit, Path baseDir) throws IOException {
+        Path temp = kit.getRoot().resolve("temp");
+        Files.createDirectories(temp);
+        Path buildDir = Files.createTempDirectory(temp, "actkit-");
+        Path tempFile = buildDir.resolve(baseDir.getFileName().toString() + ".act");
+        try {
             ActKitCompiler compiler = new ActKitCompiler();
-            Path root = modPack.getKit().getRoot();
-            Path temp = root.resolve("temp");
-            Files.createDirectories(temp);
-            String tempFileName = baseDir.getFileName().toString() + ".act";
-            Path tempFile = temp.resolve(tempFileName);
-            Files.deleteIfExists(tempFile);
             compiler.compile(baseDir, tempFile);
             return Files.readAllBytes(tempFile);
-        };
+        } finally {
+            try {
+                Files.deleteIfExists(tempFile);
+                Files.deleteIfExists(buildDir);
+            } catch (IOException e) {
+                ModKit.LOGGER.warn("Unable to clean up actkit temp dir " + buildDir, e);
+            }
+        }
     }
 }
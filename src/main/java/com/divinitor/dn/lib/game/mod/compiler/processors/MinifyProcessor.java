@@ -0,0 +1,178 @@
+package com.divinitor.dn.lib.game.mod.compiler.processors;
+
+import com.divinitor.dn.lib.game.mod.definition.ModPackage;
+import com.divinitor.dn.lib.game.mod.util.Utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Removes insignificant whitespace from XML or JSON.
+ *
+ * For XML, whitespace-only text between tags is removed, and CDATA sections are left untouched. For JSON,
+ * whitespace outside of strings is removed. Anything else is passed through unchanged. Buffers with an accessible
+ * array are compacted in place.
+ */
+public class MinifyProcessor implements Processor {
+
+    private static final ProcessorHints HINTS = ProcessorHints.builder()
+        .workload(ProcessorHints.Workload.CPU)
+        .parallelSafe(true)
+        .costPerByte(1)
+        .build();
+
+    private static final byte[] CDATA_START = "<![CDATA[".getBytes();
+    private static final byte[] CDATA_END = "]]>".getBytes();
+
+    @Override
+    public String getName() {
+        return "minify";
+    }
+
+    @Override
+    public ProcessorHints getHints() {
+        return HINTS;
+    }
+
+    @Override
+    public Utils.ThrowingSupplier<byte[]> process(ModPackage modPack, String src) {
+        return () -> Utils.toArray(this.transform(modPack, src, ByteBuffer.wrap(modPack.getAsset(src))));
+    }
+
+    @Override
+    public boolean supportsTransform() {
+        return true;
+    }
+
+    @Override
+    public ByteBuffer transform(ModPackage modPack, String src, ByteBuffer input) {
+        ByteBuffer buffer = input;
+        if (!buffer.hasArray() || buffer.isReadOnly()) {
+            ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+            copy.put(buffer.duplicate());
+            copy.flip();
+            buffer = copy;
+        }
+
+        byte[] data = buffer.array();
+        int from = buffer.arrayOffset() + buffer.position();
+        int to = buffer.arrayOffset() + buffer.limit();
+        int start = from;
+        while (start < to && isWhitespace(data[start])) {
+            ++start;
+        }
+
+        if (start == to) {
+            return buffer;
+        }
+
+        int end;
+        switch (data[start]) {
+            case '<':
+                end = minifyXml(data, from, to);
+                break;
+            case '{':
+            case '[':
+                end = minifyJson(data, from, to);
+                break;
+            default:
+                return buffer;
+        }
+
+        buffer.limit(end - buffer.arrayOffset());
+        return buffer;
+    }
+
+    /**
+     * @return The new end of the data
+     */
+    static int minifyXml(byte[] data, int from, int to) {
+        int out = from;
+        int i = from;
+        while (i < to) {
+            byte b = data[i];
+            if (b == '<' && startsWith(data, i, to, CDATA_START)) {
+                int close = indexOf(data, i + CDATA_START.length, to, CDATA_END);
+                int stop = close < 0 ? to : close + CDATA_END.length;
+                System.arraycopy(data, i, data, out, stop - i);
+                out += stop - i;
+                i = stop;
+                continue;
+            }
+
+            if (isWhitespace(b) && (out == from || data[out - 1] == '>')) {
+                //  Drop the run if it only separates tags
+                int j = i;
+                while (j < to && isWhitespace(data[j])) {
+                    ++j;
+                }
+
+                if (j == to || data[j] == '<') {
+                    i = j;
+                    continue;
+                }
+            }
+
+            data[out++] = b;
+            ++i;
+        }
+
+        return out;
+    }
+
+    /**
+     * @return The new end of the data
+     */
+    static int minifyJson(byte[] data, int from, int to) {
+        int out = from;
+        boolean inString = false;
+        boolean escaped = false;
+        for (int i = from; i < to; i++) {
+            byte b = data[i];
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (isWhitespace(b)) {
+                continue;
+            }
+
+            data[out++] = b;
+        }
+
+        return out;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private static boolean startsWith(byte[] data, int at, int to, byte[] prefix) {
+        if (to - at < prefix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[at + i] != prefix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int indexOf(byte[] data, int from, int to, byte[] needle) {
+        for (int i = from; i + needle.length <= to; i++) {
+            if (startsWith(data, i, to, needle)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
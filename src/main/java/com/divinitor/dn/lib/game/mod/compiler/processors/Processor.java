@@ -3,8 +3,51 @@ package com.divinitor.dn.lib.game.mod.compiler.processors;
 import com.divinitor.dn.lib.game.mod.definition.ModPackage;
 import com.divinitor.dn.lib.game.mod.util.Utils;
 
+import java.nio.ByteBuffer;
+
+/**
+ * Turns a mod package source into the bytes that are packed into the output.
+ *
+ * Processors are looked up by name through {@link Processors}, and a single instance is shared by every compile,
+ * so implementations must be thread-safe. Third party processors are registered with a
+ * {@code META-INF/services/com.divinitor.dn.lib.game.mod.compiler.processors.Processor} entry or through
+ * {@link Processors#register(Processor)}.
+ */
 public interface Processor {
 
+    /**
+     * @return The name used in {@code processor} fields of build directives. Matched case-insensitively.
+     */
+    String getName();
+
+    default ProcessorHints getHints() {
+        return ProcessorHints.DEFAULT;
+    }
+
     Utils.ThrowingSupplier<byte[]> process(ModPackage modPack, String src);
 
+    /**
+     * @return Whether this processor implements {@link #transform(ModPackage, String, ByteBuffer)}, and so can
+     * follow another stage in a pipeline
+     */
+    default boolean supportsTransform() {
+        return false;
+    }
+
+    /**
+     * Transforms the output of the previous stage of a processor pipeline.
+     *
+     * Implementations may modify and return the input buffer instead of allocating a new one; the input is owned
+     * by the pipeline and not used again.
+     *
+     * @param modPack The mod package being compiled
+     * @param src The source path of the directive
+     * @param input The previous stage's output, from its position to its limit
+     * @return This stage's output, from its position to its limit
+     */
+    default ByteBuffer transform(ModPackage modPack, String src, ByteBuffer input) throws Exception {
+        throw new UnsupportedOperationException("Processor " + this.getName() + " can only be the first stage of a "
+            + "pipeline");
+    }
+
 }
@@ -0,0 +1,52 @@
+package com.divinitor.dn.lib.game.mod.compiler.processors;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Describes the work a {@link Processor} does, so that compiles can schedule it.
+ */
+@Getter
+@AllArgsConstructor
+@Builder
+public class ProcessorHints {
+
+    /**
+     * Hints for plain copies and processors that don't declare any: I/O-bound, run in order, one unit per byte.
+     */
+    public static final ProcessorHints DEFAULT = ProcessorHints.builder()
+        .workload(Workload.IO)
+        .parallelSafe(false)
+        .costPerByte(1)
+        .build();
+
+    /**
+     * Whether the processor mostly waits on I/O or mostly uses the CPU.
+     */
+    protected Workload workload;
+
+    /**
+     * Whether the processor's suppliers can run concurrently with each other and with other steps.
+     */
+    protected boolean parallelSafe;
+
+    /**
+     * Expected relative cost per byte of input, used to start the heaviest work first.
+     */
+    protected double costPerByte;
+
+    /**
+     * Whether the processor's source is a directory, which can't be read out of a prebuilt archive.
+     */
+    protected boolean directorySource;
+
+    public long estimateCost(long inputSize) {
+        return (long) Math.ceil(Math.max(inputSize, 0) * costPerByte);
+    }
+
+    public enum Workload {
+        CPU,
+        IO
+    }
+}
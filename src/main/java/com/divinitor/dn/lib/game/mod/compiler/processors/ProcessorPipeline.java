@@ -0,0 +1,113 @@
+package com.divinitor.dn.lib.game.mod.compiler.processors;
+
+import com.divinitor.dn.lib.game.mod.definition.ModPackage;
+import com.divinitor.dn.lib.game.mod.util.Utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Runs an ordered chain of processors as one processor. The first stage produces the data from the source and
+ * each later stage transforms the previous stage's buffer, so no intermediate files or array copies are needed
+ * between stages.
+ */
+public class ProcessorPipeline implements Processor {
+
+    public static final String SEPARATOR = "|";
+
+    private final List<Processor> stages;
+    private final String name;
+    private final ProcessorHints hints;
+
+    public ProcessorPipeline(List<Processor> stages) {
+        if (stages.isEmpty()) {
+            throw new IllegalArgumentException("Pipeline has no stages");
+        }
+
+        this.stages = stages;
+        this.name = stages.stream().map(Processor::getName).collect(Collectors.joining(SEPARATOR));
+        for (Processor stage : stages.subList(1, stages.size())) {
+            if (!stage.supportsTransform()) {
+                throw new IllegalArgumentException("Processor " + stage.getName() + " can only be the first stage " +
+                    "of a pipeline, in " + this.name);
+            }
+        }
+
+        //  The pipeline is as heavy as all of its stages, and only as parallel-safe as its least safe stage
+        boolean cpu = false;
+        boolean parallelSafe = true;
+        double costPerByte = 0;
+        for (Processor stage : stages) {
+            ProcessorHints stageHints = stage.getHints();
+            cpu |= stageHints.getWorkload() == ProcessorHints.Workload.CPU;
+            parallelSafe &= stageHints.isParallelSafe();
+            costPerByte += stageHints.getCostPerByte();
+        }
+
+        this.hints = ProcessorHints.builder()
+            .workload(cpu ? ProcessorHints.Workload.CPU : ProcessorHints.Workload.IO)
+            .parallelSafe(parallelSafe)
+            .costPerByte(costPerByte)
+            .directorySource(stages.get(0).getHints().isDirectorySource())
+            .build();
+    }
+
+    public static ProcessorPipeline parse(String pipeline) {
+        List<Processor> stages = Arrays.stream(pipeline.split("\\|"))
+            .map(String::trim)
+            .map(Processors::getProcessor)
+            .collect(Collectors.toList());
+        return new ProcessorPipeline(stages);
+    }
+
+    public List<Processor> getStages() {
+        return stages;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public ProcessorHints getHints() {
+        return hints;
+    }
+
+    @Override
+    public Utils.ThrowingSupplier<byte[]> process(ModPackage modPack, String src) {
+        Utils.ThrowingSupplier<byte[]> first = this.stages.get(0).process(modPack, src);
+        if (this.stages.size() == 1) {
+            return first;
+        }
+
+        return () -> {
+            ByteBuffer buffer = ByteBuffer.wrap(first.get());
+            for (int i = 1; i < this.stages.size(); i++) {
+                buffer = this.stages.get(i).transform(modPack, src, buffer);
+            }
+
+            return Utils.toArray(buffer);
+        };
+    }
+
+    /**
+     * @return Whether every stage supports transform, as running the whole pipeline as a later stage needs
+     */
+    @Override
+    public boolean supportsTransform() {
+        return this.stages.stream().allMatch(Processor::supportsTransform);
+    }
+
+    @Override
+    public ByteBuffer transform(ModPackage modPack, String src, ByteBuffer input) throws Exception {
+        ByteBuffer buffer = input;
+        for (Processor stage : this.stages) {
+            buffer = stage.transform(modPack, src, buffer);
+        }
+
+        return buffer;
+    }
+}
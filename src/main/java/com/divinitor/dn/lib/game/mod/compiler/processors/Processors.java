@@ -1,17 +1,58 @@
 package com.divinitor.dn.lib.game.mod.compiler.processors;
 
+import com.divinitor.dn.lib.game.mod.ModKit;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class Processors {
 
+    private static final Map<String, Processor> PROCESSORS = new ConcurrentHashMap<>();
+
+    static {
+        ServiceLoader<Processor> loader = ServiceLoader.load(Processor.class, Processors.class.getClassLoader());
+        try {
+            for (Processor processor : loader) {
+                register(processor);
+            }
+        } catch (ServiceConfigurationError e) {
+            ModKit.LOGGER.warn("Unable to load processors", e);
+        }
+
+        //  Built in processors are always available, even if the service file was stripped
+        PROCESSORS.putIfAbsent("skn", new SknProcessor());
+        PROCESSORS.putIfAbsent("actkit", new ActKitProcessor());
+        PROCESSORS.putIfAbsent("uistring", new UiStringProcessor());
+        PROCESSORS.putIfAbsent("minify", new MinifyProcessor());
+    }
+
+    /**
+     * Gets a processor by name. Names containing {@code |} are parsed as a {@link ProcessorPipeline}.
+     */
     public static Processor getProcessor(String processor) {
-        switch (processor.toLowerCase()) {
-            case "skn":
-                return new SknProcessor();
-            case "actkit":
-                return new ActKitProcessor();
-            case "uistring":
-                return new UiStringProcessor();
-            default:
-                throw new UnsupportedOperationException("Unsupported processor " + processor);
+        if (processor.contains(ProcessorPipeline.SEPARATOR)) {
+            return ProcessorPipeline.parse(processor);
+        }
+
+        Processor ret = PROCESSORS.get(processor.trim().toLowerCase(Locale.ROOT));
+        if (ret == null) {
+            throw new UnsupportedOperationException("Unsupported processor " + processor);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Registers a processor, replacing any existing processor with the same name.
+     */
+    public static void register(Processor processor) {
+        Processor old = PROCESSORS.put(processor.getName().toLowerCase(Locale.ROOT), processor);
+        if (old != null && old.getClass() != processor.getClass()) {
+            ModKit.LOGGER.info("Processor {} replaced {} with {}", processor.getName(),
+                old.getClass().getName(), processor.getClass().getName());
         }
     }
 
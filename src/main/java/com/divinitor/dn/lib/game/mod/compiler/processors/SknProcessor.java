@@ -12,22 +12,54 @@ import com.google.gson.GsonBuilder;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 
 public class SknProcessor implements Processor {
+
+    /**
+     * Gson and its type adapters are immutable and thread-safe once built, so one setup is shared by every compile.
+     */
+    private static final Gson GSON = new GsonBuilder()
+        .registerTypeAdapter(Skn.class, new SknInstanceCreator())
+        .registerTypeAdapter(SknEntry.class, new SknEntryInstanceCreator())
+        .create();
+
+    private static final ProcessorHints HINTS = ProcessorHints.builder()
+        .workload(ProcessorHints.Workload.CPU)
+        .parallelSafe(true)
+        .costPerByte(2)
+        .build();
+
+    @Override
+    public String getName() {
+        return "skn";
+    }
+
+    @Override
+    public ProcessorHints getHints() {
+        return HINTS;
+    }
+
     @Override
     public Utils.ThrowingSupplier<byte[]> process(ModPackage modPack, String src) {
-        return () -> {
-            Gson gson = new GsonBuilder()
-                .registerTypeAdapter(Skn.class, new SknInstanceCreator())
-                .registerTypeAdapter(SknEntry.class, new SknEntryInstanceCreator())
-                .create();
-            byte[] data = modPack.getAsset(src);
-            Skn skn = gson.fromJson(new InputStreamReader(new ByteArrayInputStream(data)), Skn.class);
-            SknWriter writer = new SknWriter();
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            writer.write(skn, baos);
-            return baos.toByteArray();
-        };
+        return () -> transcode(modPack.getAsset(src));
+    }
+
+    /**
+     * Converts SKN JSON to the binary SKN format.
+     */
+    static byte[] transcode(byte[] json) throws IOException {
+        Skn skn = GSON.fromJson(new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8),
+            Skn.class);
+        if (skn == null) {
+            throw new IOException("Empty SKN definition");
+        }
+
+        //  The binary form is smaller than its JSON source, so this buffer rarely needs to grow
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(json.length);
+        new SknWriter().write(skn, baos);
+        return baos.toByteArray();
     }
 }
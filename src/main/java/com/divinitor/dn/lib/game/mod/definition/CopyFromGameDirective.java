@@ -1,5 +1,6 @@
 package com.divinitor.dn.lib.game.mod.definition;
 
+import com.divinitor.dn.lib.game.mod.AssetPathIndex;
 import lombok.*;
 
 @Getter
@@ -13,6 +14,15 @@ public class CopyFromGameDirective {
     protected String dest;
     private Integer compressionLevel;
 
+    /**
+     * Whether the source is a glob, such as {@code \\resource\\char\\*.dds}. A glob's dest is a directory, which
+     * each matching asset is copied into under its path relative to the glob's base directory, or under its full
+     * path if the glob is relative.
+     */
+    public boolean isGlob() {
+        return AssetPathIndex.isGlob(source);
+    }
+
     @Override
     public String toString() {
         return "pak::" + source + " -> " + "pak::" + dest;
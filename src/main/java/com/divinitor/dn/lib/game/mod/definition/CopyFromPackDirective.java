@@ -12,6 +12,10 @@ public class CopyFromPackDirective {
 
     protected String source;
     protected String dest;
+    /**
+     * (Optional) Processor to run the source through, or a chain of processors separated by {@code |}, such as
+     * {@code uistring|minify}. Each stage after the first transforms the previous stage's output.
+     */
     protected String processor;
     private Integer compressionLevel;
 
@@ -20,7 +24,7 @@ public class CopyFromPackDirective {
         if (Strings.isNullOrEmpty(processor)) {
             return "mod::" + source + " -> " + "pak::" + dest;
         } else {
-            return "mod::" + source + " -> " + processor + " -> " + "pak::" + dest;
+            return "mod::" + source + " -> " + processor.replace("|", " -> ") + " -> " + "pak::" + dest;
         }
     }
 
@@ -0,0 +1,65 @@
+package com.divinitor.dn.lib.game.mod.jfr;
+
+import jdk.jfr.*;
+
+@Name("com.divinitor.modkit.AssetFetch")
+@Label("Asset Fetch")
+@Description("Read of a game asset through DnAssetAccessService")
+@Category(ModKitEvents.CATEGORY)
+@Enabled(false)
+@StackTrace(false)
+public class AssetFetchEvent extends Event {
+
+    @Label("Path")
+    private String path;
+
+    @Label("Pak")
+    private String pak;
+
+    @Label("Compressed Size")
+    @DataAmount
+    private long compressedSize;
+
+    @Label("Real Size")
+    @DataAmount
+    private long realSize;
+
+    @Label("Cache Hit")
+    private boolean cacheHit;
+
+    @Label("Coalesced")
+    @Description("Waited for another thread's load of the asset instead of loading it")
+    private boolean coalesced;
+
+    @Label("Inflate Time")
+    @Timespan(Timespan.NANOSECONDS)
+    private long inflateTime;
+
+    /**
+     * @return A started event, or null if the event is not enabled in the current recording
+     */
+    public static AssetFetchEvent start() {
+        AssetFetchEvent event = new AssetFetchEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+        return event;
+    }
+
+    public void finish(String path, String pak, long compressedSize, long realSize, boolean cacheHit,
+                       boolean coalesced, long inflateTime) {
+        this.end();
+        if (this.shouldCommit()) {
+            this.path = path;
+            this.pak = pak;
+            this.compressedSize = compressedSize;
+            this.realSize = realSize;
+            this.cacheHit = cacheHit;
+            this.coalesced = coalesced;
+            this.inflateTime = inflateTime;
+            this.commit();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.divinitor.dn.lib.game.mod.jfr;
+
+import jdk.jfr.*;
+
+@Name("com.divinitor.modkit.CacheEviction")
+@Label("Asset Cache Eviction")
+@Description("Removal of an asset from the asset data cache by size or expiry")
+@Category(ModKitEvents.CATEGORY)
+@Enabled(false)
+@StackTrace(false)
+public class CacheEvictionEvent extends Event {
+
+    @Label("Path")
+    private String path;
+
+    @Label("Size")
+    @DataAmount
+    private long size;
+
+    @Label("Cause")
+    private String cause;
+
+    public static void emit(String path, long size, String cause) {
+        CacheEvictionEvent event = new CacheEvictionEvent();
+        if (event.shouldCommit()) {
+            event.path = path;
+            event.size = size;
+            event.cause = cause;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.divinitor.dn.lib.game.mod.jfr;
+
+import jdk.jfr.*;
+
+@Name("com.divinitor.modkit.CompilePhase")
+@Label("Compile Phase")
+@Description("A phase of compiling a mod package into a pak")
+@Category(ModKitEvents.CATEGORY)
+@Enabled(false)
+@StackTrace(false)
+public class CompilePhaseEvent extends Event {
+
+    @Label("Mod")
+    private String mod;
+
+    @Label("Phase")
+    private String phase;
+
+    @Label("Files")
+    private int fileCount;
+
+    @Label("Bytes Written")
+    @DataAmount
+    private long bytes;
+
+    /**
+     * @return A started event, or null if the event is not enabled in the current recording
+     */
+    public static CompilePhaseEvent start() {
+        CompilePhaseEvent event = new CompilePhaseEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+        return event;
+    }
+
+    public void finish(String mod, String phase, int fileCount, long bytes) {
+        this.end();
+        if (this.shouldCommit()) {
+            this.mod = mod;
+            this.phase = phase;
+            this.fileCount = fileCount;
+            this.bytes = bytes;
+            this.commit();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.divinitor.dn.lib.game.mod.jfr;
+
+/**
+ * Entry point for the library's Java Flight Recorder events.
+ *
+ * The events are disabled by default. Enable them with the {@code modkit.jfc} settings file shipped in the jar next
+ * to this class. JFR only reads settings files from disk, so extract it first, for example with
+ * {@code unzip -j dv-modkit.jar com/divinitor/dn/lib/game/mod/jfr/modkit.jfc}, then pass its path alongside a JDK
+ * settings file: {@code -XX:StartFlightRecording:settings=default,settings=/path/to/modkit.jfc}. Alternatively,
+ * enable the {@code com.divinitor.modkit.*} events in any other settings file. When they are off, each event site
+ * costs an allocation the JIT can remove and a flag check.
+ *
+ * On runtimes without the {@code jdk.jfr} API, which includes Java 8 before update 262, {@link #AVAILABLE} is false
+ * and no event class is ever loaded. Callers must check it before touching an event.
+ */
+public final class ModKitEvents {
+
+    public static final String CATEGORY = "Divinitor ModKit";
+
+    /**
+     * Whether the {@code jdk.jfr} API is present on this runtime.
+     */
+    public static final boolean AVAILABLE = isJfrPresent();
+
+    private ModKitEvents() {
+    }
+
+    private static boolean isJfrPresent() {
+        try {
+            Class.forName("jdk.jfr.Event", false, ModKitEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.divinitor.dn.lib.game.mod.jfr;
+
+import jdk.jfr.*;
+
+@Name("com.divinitor.modkit.PakIndex")
+@Label("Pak Index")
+@Description("Indexing of a single game pak")
+@Category(ModKitEvents.CATEGORY)
+@Enabled(false)
+@StackTrace(false)
+public class PakIndexEvent extends Event {
+
+    @Label("Pak")
+    private String pak;
+
+    @Label("Entries")
+    private int entryCount;
+
+    @Label("Invalid Entries")
+    private int invalidEntryCount;
+
+    /**
+     * @return A started event, or null if the event is not enabled in the current recording
+     */
+    public static PakIndexEvent start() {
+        PakIndexEvent event = new PakIndexEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+        return event;
+    }
+
+    public void finish(String pak, int entryCount, int invalidEntryCount) {
+        this.end();
+        if (this.shouldCommit()) {
+            this.pak = pak;
+            this.entryCount = entryCount;
+            this.invalidEntryCount = invalidEntryCount;
+            this.commit();
+        }
+    }
+}
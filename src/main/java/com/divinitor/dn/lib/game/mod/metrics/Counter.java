@@ -0,0 +1,23 @@
+package com.divinitor.dn.lib.game.mod.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing count.
+ */
+public class Counter implements Metric {
+
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+        this.value.increment();
+    }
+
+    public void add(long amount) {
+        this.value.add(amount);
+    }
+
+    public long getValue() {
+        return this.value.sum();
+    }
+}
@@ -0,0 +1,10 @@
+package com.divinitor.dn.lib.game.mod.metrics;
+
+/**
+ * A value that is computed when it is read.
+ */
+@FunctionalInterface
+public interface Gauge extends Metric {
+
+    Number getValue();
+}
@@ -0,0 +1,82 @@
+package com.divinitor.dn.lib.game.mod.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of non-negative values, usually latencies in nanoseconds.
+ *
+ * Values are counted in power-of-two buckets, so recording is lock-free and constant-size, and percentiles are
+ * accurate to within a factor of two.
+ */
+public class Histogram implements Metric {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long value) {
+        long v = Math.max(0, value);
+        this.buckets.incrementAndGet(bucketOf(v));
+        this.count.increment();
+        this.sum.add(v);
+        this.max.accumulate(v);
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    public long getSum() {
+        return this.sum.sum();
+    }
+
+    public long getMax() {
+        return this.max.get();
+    }
+
+    public double getMean() {
+        long n = this.getCount();
+        return n == 0 ? 0D : (double) this.getSum() / n;
+    }
+
+    /**
+     * @param quantile A value between 0 and 1, such as 0.99
+     * @return The upper bound of the bucket holding the given quantile, capped at the largest recorded value
+     */
+    public long getPercentile(double quantile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.buckets.get(i);
+            total += counts[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(Math.min(Math.max(quantile, 0D), 1D) * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(rank, 1)) {
+                return Math.min(upperBound(i), this.getMax());
+            }
+        }
+
+        return this.getMax();
+    }
+
+    private static int bucketOf(long value) {
+        return value == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+}
@@ -0,0 +1,7 @@
+package com.divinitor.dn.lib.game.mod.metrics;
+
+/**
+ * A named value tracked by a {@link MetricsRegistry}.
+ */
+public interface Metric {
+}
@@ -0,0 +1,166 @@
+package com.divinitor.dn.lib.game.mod.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Named counters, gauges and histograms.
+ *
+ * The asset service and compilers report into the registry they are given. Counters and histograms are shared by
+ * name, and the asset service registers its gauges with {@link #summedGauge(String, Gauge)}, so an application can
+ * share one registry between several kits and read totals across them. It can read the registry through
+ * {@link #getMetrics()} to forward to its own metrics system, or publish it over JMX with
+ * {@link #registerMBean(ObjectName)}.
+ */
+public class MetricsRegistry {
+
+    private final ConcurrentNavigableMap<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    public Counter counter(String name) {
+        return this.getOrCreate(name, Counter.class, new Counter());
+    }
+
+    public Histogram histogram(String name) {
+        return this.getOrCreate(name, Histogram.class, new Histogram());
+    }
+
+    /**
+     * Registers a gauge, replacing any existing gauge with the same name.
+     */
+    public void gauge(String name, Gauge gauge) {
+        Metric existing = this.metrics.put(name, gauge);
+        if (existing != null && !(existing instanceof Gauge)) {
+            this.metrics.put(name, existing);
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " +
+                existing.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Adds a gauge to the total reported under a name, so that several sources, such as the asset services of
+     * several kits, can report into one registry. Remove it with {@link #removeGauge(String, Gauge)} when its source
+     * goes away.
+     *
+     * @return The gauge reporting the total
+     */
+    public Gauge summedGauge(String name, Gauge gauge) {
+        Metric metric = this.metrics.computeIfAbsent(name, k -> new SummedGauge());
+        if (!(metric instanceof SummedGauge)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " +
+                metric.getClass().getSimpleName());
+        }
+
+        ((SummedGauge) metric).gauges.add(gauge);
+        return (Gauge) metric;
+    }
+
+    /**
+     * Removes a gauge added with {@link #summedGauge(String, Gauge)} from its total.
+     */
+    public void removeGauge(String name, Gauge gauge) {
+        Metric metric = this.metrics.get(name);
+        if (metric instanceof SummedGauge) {
+            ((SummedGauge) metric).gauges.remove(gauge);
+        }
+    }
+
+    public void remove(String name) {
+        this.metrics.remove(name);
+    }
+
+    /**
+     * @return A live, read-only view of every metric, sorted by name
+     */
+    public Map<String, Metric> getMetrics() {
+        return Collections.unmodifiableMap(this.metrics);
+    }
+
+    /**
+     * Reads every metric into a flat map of values, sorted by name. Histograms are expanded into {@code .count},
+     * {@code .mean}, {@code .p50}, {@code .p99} and {@code .max} values.
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> ret = new LinkedHashMap<>();
+        this.metrics.forEach((name, metric) -> {
+            if (metric instanceof Counter) {
+                ret.put(name, ((Counter) metric).getValue());
+            } else if (metric instanceof Gauge) {
+                Number value = ((Gauge) metric).getValue();
+                if (value != null) {
+                    ret.put(name, value);
+                }
+            } else if (metric instanceof Histogram) {
+                Histogram histogram = (Histogram) metric;
+                ret.put(name + ".count", histogram.getCount());
+                ret.put(name + ".mean", histogram.getMean());
+                ret.put(name + ".p50", histogram.getPercentile(0.5));
+                ret.put(name + ".p99", histogram.getPercentile(0.99));
+                ret.put(name + ".max", histogram.getMax());
+            }
+        });
+
+        return ret;
+    }
+
+    /**
+     * Publishes the registry on the platform MBean server, with one read-only attribute per snapshot value.
+     */
+    public ObjectName registerMBean(ObjectName name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        return server.registerMBean(new MetricsMBean(this), name).getObjectName();
+    }
+
+    public void unregisterMBean(ObjectName name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+    }
+
+    private <T extends Metric> T getOrCreate(String name, Class<T> type, T created) {
+        Metric metric = this.metrics.putIfAbsent(name, created);
+        if (metric == null) {
+            return created;
+        }
+
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " +
+                metric.getClass().getSimpleName());
+        }
+
+        return type.cast(metric);
+    }
+
+    private static class SummedGauge implements Gauge {
+
+        private final List<Gauge> gauges = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Number getValue() {
+            long longSum = 0;
+            double doubleSum = 0;
+            boolean integral = true;
+            for (Gauge gauge : this.gauges) {
+                Number value = gauge.getValue();
+                if (value instanceof Long || value instanceof Integer || value instanceof Short ||
+                    value instanceof Byte) {
+                    longSum += value.longValue();
+                } else if (value != null) {
+                    doubleSum += value.doubleValue();
+                    integral = false;
+                }
+            }
+
+            return integral ? (Number) longSum : (Number) (longSum + doubleSum);
+        }
+    }
+}
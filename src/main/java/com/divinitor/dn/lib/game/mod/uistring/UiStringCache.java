@@ -0,0 +1,67 @@
+package com.divinitor.dn.lib.game.mod.uistring;
+
+import com.divinitor.dn.lib.game.mod.DnAssetAccessService;
+import com.divinitor.dn.lib.game.mod.ModKit;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Holds the parsed uistring.xml for the current game version, so that it is only parsed once no matter how many
+ * directives or builds use it. The table is rebuilt when the game version changes.
+ *
+ * Also holds the search index over the table, which is persisted to disk so it survives restarts.
+ */
+public class UiStringCache {
+
+    public static final String UISTRING_PATH = "uistring.xml";
+
+    private final DnAssetAccessService assetAccessService;
+    private final Path searchIndexFile;
+    private UiStringTable table;
+    private int tableVersion;
+    private UiStringSearchIndex searchIndex;
+
+    public UiStringCache(DnAssetAccessService assetAccessService, Path searchIndexFile) {
+        this.assetAccessService = assetAccessService;
+        this.searchIndexFile = searchIndexFile;
+    }
+
+    public synchronized UiStringTable get() throws IOException {
+        int version = this.assetAccessService.getVersion();
+        if (this.table == null || this.tableVersion != version) {
+            this.table = UiStringTable.parse(this.assetAccessService.getAsset(UISTRING_PATH));
+            this.tableVersion = version;
+            this.searchIndex = null;
+        }
+
+        return this.table;
+    }
+
+    /**
+     * Gets the search index for the current game version, loading it from disk or building it if needed.
+     */
+    public synchronized UiStringSearchIndex getSearchIndex() throws IOException {
+        UiStringTable current = this.get();
+        if (this.searchIndex == null) {
+            UiStringSearchIndex index = UiStringSearchIndex.load(this.searchIndexFile, current, this.tableVersion);
+            if (index == null) {
+                index = UiStringSearchIndex.build(current, this.tableVersion);
+                try {
+                    index.save(this.searchIndexFile);
+                } catch (IOException e) {
+                    ModKit.LOGGER.warn("Unable to save uistring search index to " + this.searchIndexFile, e);
+                }
+            }
+
+            this.searchIndex = index;
+        }
+
+        return this.searchIndex;
+    }
+
+    public synchronized void invalidate() {
+        this.table = null;
+        this.searchIndex = null;
+    }
+}
@@ -0,0 +1,235 @@
+package com.divinitor.dn.lib.game.mod.uistring;
+
+import com.divinitor.dn.lib.game.mod.CompileException;
+import com.divinitor.dn.lib.game.mod.definition.ModPackage;
+import com.divinitor.dn.lib.game.mod.definition.UiStringEditDirective;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import net.openhft.hashing.LongHashFunction;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Loads a {@link UiStringEditDirective} together with everything it includes.
+ *
+ * The include graph is discovered by loading and parsing files in parallel, checked for cycles, and then merged
+ * so that top level directives override lower level ones. Parsed files are memoized by path and content hash, so
+ * directives that share includes only parse them once.
+ */
+public class UiStringDirectiveLoader {
+
+    private static final LongHashFunction XX = LongHashFunction.xx();
+
+    private final Gson gson;
+    private final Executor executor;
+
+    /**
+     * Parsed (unmerged) directives. Entries are keyed on content hash, so they are never stale, and only need to
+     * live for the duration of a build.
+     */
+    private final Cache<ParseKey, UiStringEditDirective> parsed;
+
+    public UiStringDirectiveLoader(Executor executor) {
+        this.gson = new GsonBuilder().create();
+        this.executor = executor;
+        this.parsed = CacheBuilder.newBuilder()
+            .maximumSize(4096)
+            .expireAfterAccess(1, TimeUnit.MINUTES)
+            .build();
+    }
+
+    public UiStringEditDirective load(ModPackage modPack, String src) throws IOException {
+        Map<String, CompletableFuture<Node>> nodes = new ConcurrentHashMap<>();
+        this.schedule(modPack, src, nodes);
+        this.await(nodes);
+        this.checkCycles(src, nodes, new HashMap<>(), new ArrayDeque<>());
+        return this.merge(src, nodes, new HashMap<>());
+    }
+
+    private void schedule(ModPackage modPack, String path, Map<String, CompletableFuture<Node>> nodes) {
+        CompletableFuture<Node> future = new CompletableFuture<>();
+        if (nodes.putIfAbsent(path, future) != null) {
+            return;
+        }
+
+        this.executor.execute(() -> {
+            try {
+                Node node = this.parse(modPack, path);
+                //  Children are scheduled before this node completes so that await() sees them
+                for (String include : node.includes) {
+                    this.schedule(modPack, include, nodes);
+                }
+
+                future.complete(node);
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+    }
+
+    private void await(Map<String, CompletableFuture<Node>> nodes) throws IOException {
+        int seen;
+        try {
+            do {
+                seen = nodes.size();
+                CompletableFuture.allOf(nodes.values().toArray(new CompletableFuture[0])).join();
+            } while (nodes.size() != seen);
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new IOException("Failed to load uistring directive", cause);
+        }
+    }
+
+    private Node parse(ModPackage modPack, String path) throws IOException {
+        byte[] data = modPack.getAsset(path);
+        ParseKey key = new ParseKey(modPack.toString(), path, XX.hashBytes(data));
+        UiStringEditDirective directive = this.parsed.getIfPresent(key);
+        if (directive == null) {
+            directive = this.gson.fromJson(
+                new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8),
+                UiStringEditDirective.class);
+            this.parsed.put(key, directive);
+        }
+
+        String prefix = directive.getIncludePrefix();
+        if (prefix == null) {
+            prefix = "";
+        }
+
+        List<String> includes = new ArrayList<>();
+        if (directive.getInclude() != null) {
+            for (String s : directive.getInclude()) {
+                includes.add(prefix + s);
+            }
+        }
+
+        return new Node(directive, includes);
+    }
+
+    private void checkCycles(String path, Map<String, CompletableFuture<Node>> nodes,
+                             Map<String, Boolean> visited, Deque<String> stack) {
+        Boolean done = visited.get(path);
+        if (done != null) {
+            if (!done) {
+                StringJoiner cycle = new StringJoiner(" -> ");
+                boolean inCycle = false;
+                for (Iterator<String> it = stack.descendingIterator(); it.hasNext(); ) {
+                    String p = it.next();
+                    inCycle |= p.equals(path);
+                    if (inCycle) {
+                        cycle.add(p);
+                    }
+                }
+
+                cycle.add(path);
+                throw new CompileException("uistring include cycle: " + cycle);
+            }
+
+            return;
+        }
+
+        visited.put(path, false);
+        stack.push(path);
+        for (String include : nodes.get(path).join().includes) {
+            this.checkCycles(include, nodes, visited, stack);
+        }
+
+        stack.pop();
+        visited.put(path, true);
+    }
+
+    private UiStringEditDirective merge(String path, Map<String, CompletableFuture<Node>> nodes,
+                                        Map<String, UiStringEditDirective> merged) {
+        UiStringEditDirective done = merged.get(path);
+        if (done != null) {
+            return done;
+        }
+
+        Node node = nodes.get(path).join();
+        UiStringEditDirective directive = node.directive;
+
+        //  Parsed directives are shared, so merge into copies
+        Map<String, String> add = new LinkedHashMap<>();
+        if (directive.getAdd() != null) {
+            add.putAll(directive.getAdd());
+        }
+
+        Set<UiStringEditDirective.UiStringEdit> edits = new LinkedHashSet<>();
+        if (directive.getEdit() != null) {
+            edits.addAll(directive.getEdit());
+        }
+
+        for (String include : node.includes) {
+            UiStringEditDirective subDirective = this.merge(include, nodes, merged);
+
+            // Top level directives override lower level ones
+            subDirective.getAdd().forEach(add::putIfAbsent);
+
+            // Set<> ensures that if the element already exists then it is not updated
+            edits.addAll(subDirective.getEdit());
+        }
+
+        UiStringEditDirective ret = new UiStringEditDirective();
+        ret.setAdd(add);
+        ret.setEdit(new ArrayList<>(edits));
+        ret.setIncludePrefix(directive.getIncludePrefix());
+        ret.setInclude(directive.getInclude());
+        merged.put(path, ret);
+        return ret;
+    }
+
+    private static class Node {
+        final UiStringEditDirective directive;
+        final List<String> includes;
+
+        Node(UiStringEditDirective directive, List<String> includes) {
+            this.directive = directive;
+            this.includes = includes;
+        }
+    }
+
+    private static class ParseKey {
+        final String modPack;
+        final String path;
+        final long contentHash;
+
+        ParseKey(String modPack, String path, long contentHash) {
+            this.modPack = modPack;
+            this.path = path;
+            this.contentHash = contentHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            ParseKey that = (ParseKey) o;
+            return contentHash == that.contentHash && modPack.equals(that.modPack) && path.equals(that.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(modPack, path, contentHash);
+        }
+    }
+}
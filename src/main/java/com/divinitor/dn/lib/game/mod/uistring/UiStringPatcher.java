@@ -0,0 +1,148 @@
+package com.divinitor.dn.lib.game.mod.uistring;
+
+import gnu.trove.list.TLongList;
+import gnu.trove.map.TLongObjectMap;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Produces a patched uistring.xml by copying the original document's bytes straight through and only re-encoding
+ * the {@code <message>} elements whose MIDs were changed. New messages are appended before the closing root tag.
+ *
+ * The output buffer is sized exactly up front, so patching costs about one copy of the document.
+ */
+public class UiStringPatcher {
+
+    private static final byte[] MESSAGE_PREFIX = UiStringTable.bytes("<message mid=\"");
+    private static final byte[] MESSAGE_CDATA = UiStringTable.bytes("\"><![CDATA[");
+    private static final byte[] MESSAGE_SUFFIX = UiStringTable.bytes("]]></message>");
+    private static final byte[] CDATA_SPLIT = UiStringTable.bytes("]]]]><![CDATA[>");
+    private static final byte[] EMPTY = new byte[0];
+
+    private UiStringPatcher() {
+    }
+
+    /**
+     * @param table       The original uistring.xml
+     * @param changes     New values for MIDs that exist in the table
+     * @param additions   Values for MIDs that do not exist in the table
+     * @param appendOrder The order in which to append the added MIDs
+     * @return The patched document
+     */
+    public static byte[] patch(UiStringTable table,
+                               TLongObjectMap<String> changes,
+                               TLongObjectMap<String> additions,
+                               TLongList appendOrder) {
+        List<Splice> splices = new ArrayList<>(changes.size() + 1);
+        changes.forEachEntry((mid, value) -> {
+            int entry = table.indexOf(mid);
+            if (entry != -1) {
+                splices.add(new Splice(table.getElementStart(entry), table.getElementEnd(entry),
+                    encodeMessage(mid, value, false)));
+            }
+
+            return true;
+        });
+
+        //  Drop repeated elements for changed MIDs so they can't shadow the new value
+        for (int i = 0; i < table.getDuplicateCount(); i++) {
+            if (changes.containsKey(table.getDuplicateMid(i))) {
+                splices.add(new Splice(table.getDuplicateStart(i), table.getDuplicateEnd(i), EMPTY));
+            }
+        }
+
+        if (!appendOrder.isEmpty()) {
+            ByteArrayOutputStream appended = new ByteArrayOutputStream();
+            for (int i = 0; i < appendOrder.size(); i++) {
+                long mid = appendOrder.get(i);
+                byte[] message = encodeMessage(mid, additions.get(mid), true);
+                appended.write(message, 0, message.length);
+            }
+
+            int at = table.getRootCloseOffset();
+            splices.add(new Splice(at, at, appended.toByteArray()));
+        }
+
+        splices.sort(Comparator.comparingInt((Splice s) -> s.start).thenComparingInt(s -> s.end));
+
+        byte[] source = table.getSource();
+        long size = source.length;
+        for (Splice splice : splices) {
+            size += splice.replacement.length - (splice.end - splice.start);
+        }
+
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Patched uistring.xml is too large");
+        }
+
+        byte[] out = new byte[(int) size];
+        int pos = 0;
+        int outPos = 0;
+        for (Splice splice : splices) {
+            int copy = splice.start - pos;
+            System.arraycopy(source, pos, out, outPos, copy);
+            outPos += copy;
+            System.arraycopy(splice.replacement, 0, out, outPos, splice.replacement.length);
+            outPos += splice.replacement.length;
+            pos = splice.end;
+        }
+
+        System.arraycopy(source, pos, out, outPos, source.length - pos);
+        return out;
+    }
+
+    static byte[] encodeMessage(long mid, String value, boolean newline) {
+        byte[] midBytes = Long.toString(mid).getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value == null ? EMPTY : value.getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+            MESSAGE_PREFIX.length + midBytes.length + MESSAGE_CDATA.length + valueBytes.length
+                + MESSAGE_SUFFIX.length + 1);
+        out.write(MESSAGE_PREFIX, 0, MESSAGE_PREFIX.length);
+        out.write(midBytes, 0, midBytes.length);
+        out.write(MESSAGE_CDATA, 0, MESSAGE_CDATA.length);
+
+        //  "]]>" can't appear inside CDATA, split it across two sections
+        int pos = 0;
+        int split;
+        while ((split = indexOfCdataClose(valueBytes, pos)) != -1) {
+            out.write(valueBytes, pos, split - pos);
+            out.write(CDATA_SPLIT, 0, CDATA_SPLIT.length);
+            pos = split + 3;
+        }
+
+        out.write(valueBytes, pos, valueBytes.length - pos);
+        out.write(MESSAGE_SUFFIX, 0, MESSAGE_SUFFIX.length);
+        if (newline) {
+            out.write('\n');
+        }
+
+        return out.toByteArray();
+    }
+
+    private static int indexOfCdataClose(byte[] buf, int from) {
+        for (int i = from; i + 2 < buf.length; i++) {
+            if (buf[i] == ']' && buf[i + 1] == ']' && buf[i + 2] == '>') {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static class Splice {
+        final int start;
+        final int end;
+        final byte[] replacement;
+
+        Splice(int start, int end, byte[] replacement) {
+            this.start = start;
+            this.end = end;
+            this.replacement = replacement;
+        }
+    }
+}
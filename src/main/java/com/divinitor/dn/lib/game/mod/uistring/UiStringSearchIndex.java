@@ -0,0 +1,264 @@
+package com.divinitor.dn.lib.game.mod.uistring;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Case-insensitive trigram index over the messages of a {@link UiStringTable}, for substring and prefix searches.
+ *
+ * Postings are stored in compressed sparse row form: a sorted array of trigram keys, and for each key a range of
+ * entry indices in a single postings array. Candidates from the postings intersection are verified against the
+ * folded message text, so results are exact.
+ */
+public class UiStringSearchIndex {
+
+    private static final int MAGIC = 0x44565553;  //  DVUS
+    private static final int FORMAT_VERSION = 1;
+
+    private final UiStringTable table;
+    private final int gameVersion;
+    private final String[] folded;
+    private final long[] keys;
+    private final int[] offsets;
+    private final int[] postings;
+
+    private UiStringSearchIndex(UiStringTable table, int gameVersion, String[] folded,
+                                long[] keys, int[] offsets, int[] postings) {
+        this.table = table;
+        this.gameVersion = gameVersion;
+        this.folded = folded;
+        this.keys = keys;
+        this.offsets = offsets;
+        this.postings = postings;
+    }
+
+    public static UiStringSearchIndex build(UiStringTable table, int gameVersion) {
+        String[] folded = fold(table);
+        TLongObjectMap<TIntArrayList> lists = new TLongObjectHashMap<>();
+        for (int entry = 0; entry < folded.length; entry++) {
+            String text = folded[entry];
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                long key = trigram(text, i);
+                TIntArrayList list = lists.get(key);
+                if (list == null) {
+                    list = new TIntArrayList(4);
+                    lists.put(key, list);
+                }
+
+                //  Entries are visited in order, so a repeated trigram is always at the tail
+                if (list.isEmpty() || list.get(list.size() - 1) != entry) {
+                    list.add(entry);
+                }
+            }
+        }
+
+        long[] keys = lists.keys();
+        Arrays.sort(keys);
+        int[] offsets = new int[keys.length + 1];
+        int total = 0;
+        for (int i = 0; i < keys.length; i++) {
+            offsets[i] = total;
+            total += lists.get(keys[i]).size();
+        }
+
+        offsets[keys.length] = total;
+        int[] postings = new int[total];
+        for (int i = 0; i < keys.length; i++) {
+            TIntArrayList list = lists.get(keys[i]);
+            list.toArray(postings, 0, offsets[i], list.size());
+        }
+
+        return new UiStringSearchIndex(table, gameVersion, folded, keys, offsets, postings);
+    }
+
+    public int getGameVersion() {
+        return gameVersion;
+    }
+
+    /**
+     * Finds every MID whose message contains the query, ignoring case.
+     *
+     * @return Matching MIDs, in document order
+     */
+    public long[] search(String query) {
+        return this.find(fold(query), false);
+    }
+
+    /**
+     * Finds every MID whose message starts with the query, ignoring case.
+     *
+     * @return Matching MIDs, in document order
+     */
+    public long[] searchPrefix(String prefix) {
+        return this.find(fold(prefix), true);
+    }
+
+    private long[] find(String query, boolean prefix) {
+        TLongArrayList ret = new TLongArrayList();
+        if (query.length() < 3) {
+            //  Too short for trigrams, fall back to a scan
+            for (int entry = 0; entry < folded.length; entry++) {
+                if (matches(entry, query, prefix)) {
+                    ret.add(table.getMid(entry));
+                }
+            }
+
+            return ret.toArray();
+        }
+
+        int[] candidates = this.candidates(query);
+        for (int entry : candidates) {
+            if (matches(entry, query, prefix)) {
+                ret.add(table.getMid(entry));
+            }
+        }
+
+        return ret.toArray();
+    }
+
+    private boolean matches(int entry, String query, boolean prefix) {
+        return prefix ? folded[entry].startsWith(query) : folded[entry].contains(query);
+    }
+
+    /**
+     * Intersects the postings of every trigram in the query, smallest list first.
+     */
+    private int[] candidates(String query) {
+        int count = query.length() - 2;
+        int[] slots = new int[count];
+        for (int i = 0; i < count; i++) {
+            int slot = Arrays.binarySearch(keys, trigram(query, i));
+            if (slot < 0) {
+                return new int[0];
+            }
+
+            slots[i] = slot;
+        }
+
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = slots[i];
+        }
+
+        Arrays.sort(order, (a, b) -> Integer.compare(offsets[a + 1] - offsets[a], offsets[b + 1] - offsets[b]));
+
+        int first = order[0];
+        int[] result = Arrays.copyOfRange(postings, offsets[first], offsets[first + 1]);
+        int size = result.length;
+        for (int i = 1; i < count && size > 0; i++) {
+            int slot = order[i];
+            int from = offsets[slot];
+            int to = offsets[slot + 1];
+            int kept = 0;
+            for (int j = 0; j < size; j++) {
+                int found = Arrays.binarySearch(postings, from, to, result[j]);
+                if (found >= 0) {
+                    result[kept++] = result[j];
+                    from = found + 1;
+                } else {
+                    from = -found - 1;
+                }
+            }
+
+            size = kept;
+        }
+
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Writes the index to a file. The file is written to a temporary sibling first and then moved into place.
+     */
+    public void save(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = file.resolveSibling(file.getFileName().toString() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(gameVersion);
+            out.writeInt(folded.length);
+            out.writeInt(keys.length);
+            for (long key : keys) {
+                out.writeLong(key);
+            }
+
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+
+            for (int posting : postings) {
+                out.writeInt(posting);
+            }
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Loads a saved index.
+     *
+     * @return The index, or null if the file is missing, unreadable, or was built for a different game version or
+     * table.
+     */
+    public static UiStringSearchIndex load(Path file, UiStringTable table, int gameVersion) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            if (in.readInt() != MAGIC
+                || in.readInt() != FORMAT_VERSION
+                || in.readInt() != gameVersion
+                || in.readInt() != table.size()) {
+                return null;
+            }
+
+            long[] keys = new long[in.readInt()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = in.readLong();
+            }
+
+            int[] offsets = new int[keys.length + 1];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = in.readInt();
+            }
+
+            int[] postings = new int[offsets[keys.length]];
+            for (int i = 0; i < postings.length; i++) {
+                postings[i] = in.readInt();
+            }
+
+            return new UiStringSearchIndex(table, gameVersion, fold(table), keys, offsets, postings);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String[] fold(UiStringTable table) {
+        String[] folded = new String[table.size()];
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = fold(table.getValue(i));
+        }
+
+        return folded;
+    }
+
+    private static String fold(String s) {
+        return s.toLowerCase(Locale.ROOT);
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+}
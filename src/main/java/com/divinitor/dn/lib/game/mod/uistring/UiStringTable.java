@@ -0,0 +1,482 @@
+package com.divinitor.dn.lib.game.mod.uistring;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.map.TLongIntMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact, read-only model of a parsed uistring.xml.
+ *
+ * MIDs are kept as primitive longs in an open addressing map, and message values are kept as UTF-8 slices of the
+ * source document rather than as Strings. Values that need entity decoding are decoded once into a side pool.
+ * Entries are kept in document order.
+ */
+public class UiStringTable {
+
+    private static final byte[] MESSAGE_OPEN = bytes("<message");
+    private static final byte[] MESSAGE_CLOSE = bytes("</message>");
+    private static final byte[] CDATA_OPEN = bytes("<![CDATA[");
+    private static final byte[] CDATA_CLOSE = bytes("]]>");
+    private static final byte[] COMMENT_OPEN = bytes("<!--");
+    private static final byte[] COMMENT_CLOSE = bytes("-->");
+    private static final byte[] MID_ATTRIBUTE = bytes("mid");
+    private static final byte[] MESSAGES_CLOSE = bytes("</messages>");
+
+    private final byte[] source;
+    private final TLongIntMap index;
+    private long[] mids;
+
+    /**
+     * Start of each value. Non-negative values index into {@link #source}, negative values are {@code ~offset} into
+     * {@link #decoded}.
+     */
+    private int[] valueStarts;
+    private int[] valueLengths;
+
+    /**
+     * Byte range of each entry's whole {@code <message>} element in {@link #source}.
+     */
+    private int[] elementStarts;
+    private int[] elementEnds;
+
+    /**
+     * Byte ranges of later {@code <message>} elements that repeat an earlier MID, as (MID, start, end) triples.
+     */
+    private long[] duplicates;
+    private int duplicateCount;
+
+    private byte[] decoded;
+    private int decodedLength;
+    private int size;
+    private int rootCloseOffset;
+
+    private UiStringTable(byte[] source) {
+        this.source = source;
+        this.index = new TLongIntHashMap(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, 0L, -1);
+        this.mids = new long[1024];
+        this.valueStarts = new int[1024];
+        this.valueLengths = new int[1024];
+        this.elementStarts = new int[1024];
+        this.elementEnds = new int[1024];
+        this.duplicates = new long[0];
+        this.decoded = new byte[1024];
+    }
+
+    /**
+     * Parses a uistring.xml document. The table keeps a reference to the given array, which must not be modified.
+     */
+    public static UiStringTable parse(byte[] xml) {
+        UiStringTable table = new UiStringTable(xml);
+        table.scan();
+        return table;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] getSource() {
+        return source;
+    }
+
+    public long getMid(int entry) {
+        return mids[entry];
+    }
+
+    public int getElementStart(int entry) {
+        return elementStarts[entry];
+    }
+
+    public int getElementEnd(int entry) {
+        return elementEnds[entry];
+    }
+
+    public int getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    public long getDuplicateMid(int duplicate) {
+        return duplicates[duplicate * 3];
+    }
+
+    public int getDuplicateStart(int duplicate) {
+        return (int) duplicates[duplicate * 3 + 1];
+    }
+
+    public int getDuplicateEnd(int duplicate) {
+        return (int) duplicates[duplicate * 3 + 2];
+    }
+
+    /**
+     * @return The offset of the closing {@code </messages>} tag, or the end of the document if there is none.
+     */
+    public int getRootCloseOffset() {
+        return rootCloseOffset;
+    }
+
+    /**
+     * @return The entry index of the given MID, or -1 if it is not in the table.
+     */
+    public int indexOf(long mid) {
+        return index.get(mid);
+    }
+
+    public boolean contains(long mid) {
+        return index.containsKey(mid);
+    }
+
+    /**
+     * @return The value for the given MID, or null if it is not in the table.
+     */
+    public String get(long mid) {
+        int entry = index.get(mid);
+        if (entry == -1) {
+            return null;
+        }
+
+        return getValue(entry);
+    }
+
+    public String getValue(int entry) {
+        int start = valueStarts[entry];
+        if (start >= 0) {
+            return new String(source, start, valueLengths[entry], StandardCharsets.UTF_8);
+        } else {
+            return new String(decoded, ~start, valueLengths[entry], StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Compares an entry's value against UTF-8 bytes without decoding the value.
+     */
+    public boolean valueEquals(int entry, byte[] utf8) {
+        int length = valueLengths[entry];
+        if (length != utf8.length) {
+            return false;
+        }
+
+        int start = valueStarts[entry];
+        byte[] buf = source;
+        if (start < 0) {
+            start = ~start;
+            buf = decoded;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (buf[start + i] != utf8[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void scan() {
+        int pos = 0;
+        while ((pos = indexOf(source, MESSAGE_OPEN, pos, source.length)) != -1) {
+            int nameEnd = pos + MESSAGE_OPEN.length;
+            if (nameEnd >= source.length || !isTagNameEnd(source[nameEnd])) {
+                //  Some other element that starts with "message", e.g. the <messages> root
+                pos = nameEnd;
+                continue;
+            }
+
+            int tagEnd = findTagEnd(nameEnd);
+            long mid = parseMid(nameEnd, tagEnd);
+            if (source[tagEnd - 1] == '/') {
+                //  <message mid="..."/>
+                addEntry(mid, tagEnd + 1, 0, pos, tagEnd + 1);
+                pos = tagEnd + 1;
+                continue;
+            }
+
+            int contentStart = tagEnd + 1;
+            int contentEnd = findMessageClose(contentStart);
+            int elementEnd = contentEnd + MESSAGE_CLOSE.length;
+            addValue(mid, contentStart, contentEnd, pos, elementEnd);
+            pos = elementEnd;
+        }
+
+        int lastElementEnd = size == 0 ? 0 : elementEnds[size - 1];
+        if (duplicateCount > 0) {
+            lastElementEnd = Math.max(lastElementEnd, getDuplicateEnd(duplicateCount - 1));
+        }
+
+        rootCloseOffset = indexOf(source, MESSAGES_CLOSE, lastElementEnd, source.length);
+        if (rootCloseOffset == -1) {
+            rootCloseOffset = source.length;
+        }
+
+        index.compact();
+    }
+
+    private static boolean isTagNameEnd(byte b) {
+        return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private int findTagEnd(int pos) {
+        byte quote = 0;
+        for (int i = pos; i < source.length; i++) {
+            byte b = source[i];
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return i;
+            }
+        }
+
+        throw new IllegalArgumentException("Unterminated <message> tag at " + pos);
+    }
+
+    private long parseMid(int start, int end) {
+        int pos = start;
+        while ((pos = indexOf(source, MID_ATTRIBUTE, pos, end)) != -1) {
+            int p = pos + MID_ATTRIBUTE.length;
+            if (!isTagNameEnd(source[pos - 1]) && source[pos - 1] != '"' && source[pos - 1] != '\'') {
+                pos = p;
+                continue;
+            }
+
+            while (p < end && isWhitespace(source[p])) {
+                ++p;
+            }
+
+            if (p >= end || source[p] != '=') {
+                pos = p;
+                continue;
+            }
+
+            ++p;
+            while (p < end && isWhitespace(source[p])) {
+                ++p;
+            }
+
+            byte quote = source[p];
+            int valueStart = p + 1;
+            int valueEnd = valueStart;
+            while (valueEnd < end && source[valueEnd] != quote) {
+                ++valueEnd;
+            }
+
+            return Long.parseLong(new String(source, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8)
+                .trim());
+        }
+
+        throw new IllegalArgumentException("<message> without mid at " + start);
+    }
+
+    private int findMessageClose(int pos) {
+        while (pos < source.length) {
+            if (startsWith(source, CDATA_OPEN, pos)) {
+                pos = requireIndexOf(CDATA_CLOSE, pos + CDATA_OPEN.length) + CDATA_CLOSE.length;
+            } else if (startsWith(source, COMMENT_OPEN, pos)) {
+                pos = requireIndexOf(COMMENT_CLOSE, pos + COMMENT_OPEN.length) + COMMENT_CLOSE.length;
+            } else if (startsWith(source, MESSAGE_CLOSE, pos)) {
+                return pos;
+            } else {
+                ++pos;
+            }
+        }
+
+        throw new IllegalArgumentException("Unterminated <message> element");
+    }
+
+    private int requireIndexOf(byte[] needle, int from) {
+        int ret = indexOf(source, needle, from, source.length);
+        if (ret == -1) {
+            throw new IllegalArgumentException("Unterminated section at " + from);
+        }
+
+        return ret;
+    }
+
+    private void addValue(long mid, int start, int end, int elementStart, int elementEnd) {
+        //  Fast path, a single CDATA section
+        if (startsWith(source, CDATA_OPEN, start)
+            && end - CDATA_CLOSE.length >= start + CDATA_OPEN.length
+            && startsWith(source, CDATA_CLOSE, end - CDATA_CLOSE.length)
+            && indexOf(source, CDATA_CLOSE, start + CDATA_OPEN.length, end) == end - CDATA_CLOSE.length
+            && !contains(source, (byte) '\r', start, end)) {
+            addEntry(mid, start + CDATA_OPEN.length, end - CDATA_CLOSE.length - start - CDATA_OPEN.length,
+                elementStart, elementEnd);
+            return;
+        }
+
+        //  Fast path, plain text
+        if (!contains(source, (byte) '<', start, end)
+            && !contains(source, (byte) '&', start, end)
+            && !contains(source, (byte) '\r', start, end)) {
+            addEntry(mid, start, end - start, elementStart, elementEnd);
+            return;
+        }
+
+        //  Slow path, decode into the side pool
+        int decodedStart = decodedLength;
+        int pos = start;
+        while (pos < end) {
+            if (startsWith(source, CDATA_OPEN, pos)) {
+                int cdataEnd = indexOf(source, CDATA_CLOSE, pos + CDATA_OPEN.length, end);
+                appendDecoded(source, pos + CDATA_OPEN.length, cdataEnd);
+                pos = cdataEnd + CDATA_CLOSE.length;
+            } else if (startsWith(source, COMMENT_OPEN, pos)) {
+                pos = indexOf(source, COMMENT_CLOSE, pos + COMMENT_OPEN.length, end) + COMMENT_CLOSE.length;
+            } else if (source[pos] == '&') {
+                int semi = pos + 1;
+                while (semi < end && source[semi] != ';') {
+                    ++semi;
+                }
+
+                String entity = new String(source, pos + 1, semi - pos - 1, StandardCharsets.UTF_8);
+                byte[] replacement = decodeEntity(entity).getBytes(StandardCharsets.UTF_8);
+                appendDecoded(replacement, 0, replacement.length);
+                pos = semi + 1;
+            } else {
+                int next = pos;
+                while (next < end && source[next] != '&' && source[next] != '<') {
+                    ++next;
+                }
+
+                if (next == pos) {
+                    //  Stray '<', keep it as is
+                    ++next;
+                }
+
+                appendDecoded(source, pos, next);
+                pos = next;
+            }
+        }
+
+        addEntry(mid, ~decodedStart, decodedLength - decodedStart, elementStart, elementEnd);
+    }
+
+    private void appendDecoded(byte[] buf, int start, int end) {
+        int required = decodedLength + (end - start);
+        if (required > decoded.length) {
+            decoded = Arrays.copyOf(decoded, Math.max(decoded.length * 2, required));
+        }
+
+        for (int i = start; i < end; i++) {
+            byte b = buf[i];
+            //  XML normalizes line endings
+            if (b == '\r') {
+                if (i + 1 < end && buf[i + 1] == '\n') {
+                    continue;
+                }
+
+                b = '\n';
+            }
+
+            decoded[decodedLength++] = b;
+        }
+    }
+
+    private static String decodeEntity(String entity) {
+        switch (entity) {
+            case "lt":
+                return "<";
+            case "gt":
+                return ">";
+            case "amp":
+                return "&";
+            case "quot":
+                return "\"";
+            case "apos":
+                return "'";
+            default:
+                if (entity.startsWith("#x") || entity.startsWith("#X")) {
+                    return new String(Character.toChars(Integer.parseInt(entity.substring(2), 16)));
+                } else if (entity.startsWith("#")) {
+                    return new String(Character.toChars(Integer.parseInt(entity.substring(1))));
+                }
+
+                //  Unknown entity, keep it verbatim
+                return "&" + entity + ";";
+        }
+    }
+
+    private void addEntry(long mid, int start, int length, int elementStart, int elementEnd) {
+        int existing = index.get(mid);
+        if (existing != -1) {
+            //  Later duplicates replace the value but keep the original position
+            valueStarts[existing] = start;
+            valueLengths[existing] = length;
+            if (duplicateCount * 3 == duplicates.length) {
+                duplicates = Arrays.copyOf(duplicates, Math.max(48, duplicates.length * 2));
+            }
+
+            duplicates[duplicateCount * 3] = mid;
+            duplicates[duplicateCount * 3 + 1] = elementStart;
+            duplicates[duplicateCount * 3 + 2] = elementEnd;
+            ++duplicateCount;
+            return;
+        }
+
+        if (size == mids.length) {
+            int capacity = size * 2;
+            mids = Arrays.copyOf(mids, capacity);
+            valueStarts = Arrays.copyOf(valueStarts, capacity);
+            valueLengths = Arrays.copyOf(valueLengths, capacity);
+            elementStarts = Arrays.copyOf(elementStarts, capacity);
+            elementEnds = Arrays.copyOf(elementEnds, capacity);
+        }
+
+        mids[size] = mid;
+        valueStarts[size] = start;
+        valueLengths[size] = length;
+        elementStarts[size] = elementStart;
+        elementEnds[size] = elementEnd;
+        index.put(mid, size);
+        ++size;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private static boolean contains(byte[] buf, byte b, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buf[i] == b) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    static boolean startsWith(byte[] buf, byte[] prefix, int pos) {
+        if (pos + prefix.length > buf.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (buf[pos + i] != prefix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    static int indexOf(byte[] buf, byte[] needle, int from, int to) {
+        byte first = needle[0];
+        int max = to - needle.length;
+        for (int i = from; i <= max; i++) {
+            if (buf[i] == first && startsWith(buf, needle, i)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
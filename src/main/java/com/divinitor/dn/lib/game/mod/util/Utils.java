@@ -1,5 +1,7 @@
 package com.divinitor.dn.lib.game.mod.util;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.function.Consumer;
 
@@ -38,6 +40,27 @@ public class Utils {
         };
     }
 
+    /**
+     * Gets the remaining contents of a buffer as an array. If the buffer covers the whole of its backing array, the
+     * backing array is returned without copying.
+     */
+    public static byte[] toArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && !buffer.isReadOnly()) {
+            byte[] array = buffer.array();
+            int from = buffer.arrayOffset() + buffer.position();
+            int to = buffer.arrayOffset() + buffer.limit();
+            if (from == 0 && to == array.length) {
+                return array;
+            }
+
+            return Arrays.copyOfRange(array, from, to);
+        }
+
+        byte[] ret = new byte[buffer.remaining()];
+        buffer.duplicate().get(ret);
+        return ret;
+    }
+
     public interface ThrowingConsumer<T> {
         void accept(T t) throws Exception;
     }
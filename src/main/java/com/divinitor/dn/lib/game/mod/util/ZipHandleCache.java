@@ -0,0 +1,257 @@
+package com.divinitor.dn.lib.game.mod.util;
+
+import com.divinitor.dn.lib.game.mod.ModKit;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.*;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Shares open zip files between callers, so that a zipped mod package's central directory is only read once.
+ *
+ * Handles are reference counted. A zip that nobody holds is closed once it has been idle for the idle timeout, and
+ * a zip whose modification time changes is reopened for new callers and closed once its last holder releases it.
+ * Each open zip has a prebuilt index of its entry names.
+ */
+public class ZipHandleCache implements Closeable {
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    private final long idleTimeoutMillis;
+    private final Map<Path, ZipHandle> handles;
+    private final ScheduledExecutorService sweeper;
+
+    public ZipHandleCache() {
+        this(DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    public ZipHandleCache(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.handles = new HashMap<>();
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("modkit-zip-sweeper")
+            .setDaemon(true)
+            .build());
+        long period = Math.max(idleTimeoutMillis / 2, 1000);
+        this.sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Acquires a handle to a zip file. The handle must be closed when the caller is done with it.
+     */
+    public synchronized ZipHandle acquire(Path zip) throws IOException {
+        Path key = zip.toAbsolutePath().normalize();
+        FileTime modified = Files.getLastModifiedTime(key);
+        ZipHandle handle = this.handles.get(key);
+        if (handle != null && !handle.modified.equals(modified)) {
+            //  Stale, let current holders finish with it
+            this.handles.remove(key);
+            handle.retired = true;
+            if (handle.refCount == 0) {
+                handle.closeQuietly();
+            }
+
+            handle = null;
+        }
+
+        if (handle == null) {
+            handle = new ZipHandle(this, key, modified);
+            this.handles.put(key, handle);
+        }
+
+        ++handle.refCount;
+        handle.lastUsed = System.currentTimeMillis();
+        return handle;
+    }
+
+    /**
+     * Closes and forgets the handle for a zip file if nobody holds it, for example before the file is replaced.
+     */
+    public synchronized void invalidate(Path zip) {
+        Path key = zip.toAbsolutePath().normalize();
+        ZipHandle handle = this.handles.remove(key);
+        if (handle != null) {
+            handle.retired = true;
+            if (handle.refCount == 0) {
+                handle.closeQuietly();
+            }
+        }
+    }
+
+    private synchronized void release(ZipHandle handle) {
+        if (handle.refCount <= 0) {
+            throw new IllegalStateException("Zip handle released too many times: " + handle.path);
+        }
+
+        --handle.refCount;
+        handle.lastUsed = System.currentTimeMillis();
+        if (handle.refCount == 0 && handle.retired) {
+            handle.closeQuietly();
+        }
+    }
+
+    private synchronized void sweep() {
+        long cutoff = System.currentTimeMillis() - this.idleTimeoutMillis;
+        for (Iterator<ZipHandle> it = this.handles.values().iterator(); it.hasNext(); ) {
+            ZipHandle handle = it.next();
+            if (handle.refCount == 0 && handle.lastUsed < cutoff) {
+                it.remove();
+                handle.closeQuietly();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        this.sweeper.shutdownNow();
+        for (ZipHandle handle : this.handles.values()) {
+            handle.retired = true;
+            if (handle.refCount == 0) {
+                handle.closeQuietly();
+            }
+        }
+
+        this.handles.clear();
+    }
+
+    public static class ZipHandle implements Closeable {
+
+        private final ZipHandleCache cache;
+        private final Path path;
+        private final FileTime modified;
+        private final ZipFile zipFile;
+        private final Map<String, ZipEntry> entries;
+        private final Set<String> directories;
+        private FileSystem fileSystem;
+        private int refCount;
+        private long lastUsed;
+        private boolean retired;
+
+        private ZipHandle(ZipHandleCache cache, Path path, FileTime modified) throws IOException {
+            this.cache = cache;
+            this.path = path;
+            this.modified = modified;
+            this.zipFile = new ZipFile(path.toFile());
+            this.entries = new HashMap<>(Math.max(16, this.zipFile.size() * 4 / 3 + 1));
+            this.directories = new HashSet<>();
+            try {
+                for (Enumeration<? extends ZipEntry> e = this.zipFile.entries(); e.hasMoreElements(); ) {
+                    ZipEntry entry = e.nextElement();
+                    String name = normalize(entry.getName());
+                    if (entry.isDirectory()) {
+                        this.directories.add(name);
+                    } else {
+                        this.entries.put(name, entry);
+                    }
+
+                    //  Directories don't always have their own entries
+                    for (int slash = name.lastIndexOf('/'); slash > 0; slash = name.lastIndexOf('/', slash - 1)) {
+                        if (!this.directories.add(name.substring(0, slash))) {
+                            break;
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                //  Malformed entries are only reported while iterating
+                this.zipFile.close();
+                throw e;
+            }
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public ZipFile getZipFile() {
+            return zipFile;
+        }
+
+        /**
+         * @return The file entry with the given name, or null if there is none
+         */
+        public ZipEntry getEntry(String name) {
+            return this.entries.get(normalize(name));
+        }
+
+        /**
+         * @return Whether the zip contains a file or directory with the given name
+         */
+        public boolean contains(String name) {
+            String normalized = normalize(name);
+            return this.entries.containsKey(normalized) || this.directories.contains(normalized);
+        }
+
+        public byte[] read(String name) throws IOException {
+            ZipEntry entry = this.getEntry(name);
+            if (entry == null) {
+                throw new FileNotFoundException(name);
+            }
+
+            long size = entry.getSize();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(size > 0 && size < Integer.MAX_VALUE ?
+                (int) size : 8192);
+            byte[] buf = new byte[8192];
+            int read;
+            try (InputStream in = this.zipFile.getInputStream(entry)) {
+                while ((read = in.read(buf)) != -1) {
+                    out.write(buf, 0, read);
+                }
+            }
+
+            return out.toByteArray();
+        }
+
+        /**
+         * Gets the zip as a file system. Paths from it are only valid while this handle is held.
+         */
+        public synchronized FileSystem getFileSystem() throws IOException {
+            if (this.fileSystem == null) {
+                this.fileSystem = FileSystems.newFileSystem(this.path, (ClassLoader) null);
+            }
+
+            return this.fileSystem;
+        }
+
+        /**
+         * Releases this handle.
+         */
+        @Override
+        public void close() {
+            this.cache.release(this);
+        }
+
+        private synchronized void closeQuietly() {
+            try {
+                this.zipFile.close();
+                if (this.fileSystem != null) {
+                    this.fileSystem.close();
+                }
+            } catch (IOException e) {
+                ModKit.LOGGER.warn("Unable to close " + this.path, e);
+            }
+        }
+
+        private static String normalize(String name) {
+            String ret = name.replace('\\', '/');
+            while (ret.startsWith("/")) {
+                ret = ret.substring(1);
+            }
+
+            while (ret.endsWith("/")) {
+                ret = ret.substring(0, ret.length() - 1);
+            }
+
+            return ret;
+        }
+    }
+}